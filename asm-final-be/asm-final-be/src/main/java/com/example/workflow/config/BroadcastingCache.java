@@ -0,0 +1,102 @@
+package com.example.workflow.config;
+
+import org.springframework.cache.Cache;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.Callable;
+
+// Bọc một cache cục bộ để mọi lần evict/clear:
+//  - được lặp lại sau khi transaction commit (tránh request khác nạp lại dữ liệu cũ trước khi commit)
+//  - được phát tới các node khác qua CacheInvalidationBus
+public class BroadcastingCache implements Cache {
+
+    private final Cache delegate;
+    private final CacheInvalidationBus invalidationBus;
+
+    public BroadcastingCache(Cache delegate, CacheInvalidationBus invalidationBus) {
+        this.delegate = delegate;
+        this.invalidationBus = invalidationBus;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        return delegate.get(key, type);
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        return delegate.get(key, valueLoader);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, value);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        return delegate.putIfAbsent(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+        afterCommit(() -> delegate.evict(key));
+        invalidationBus.publish(getName(), key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        evict(key);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        afterCommit(delegate::clear);
+        invalidationBus.publish(getName(), null);
+    }
+
+    @Override
+    public boolean invalidate() {
+        clear();
+        return true;
+    }
+
+    // Được gọi khi nhận thông báo từ node khác: chỉ xóa cục bộ, không phát lại
+    void evictLocally(Object key) {
+        if (key == null) {
+            delegate.clear();
+        } else {
+            delegate.evict(key);
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
+    }
+}
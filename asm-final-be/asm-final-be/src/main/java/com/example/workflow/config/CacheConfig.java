@@ -0,0 +1,64 @@
+package com.example.workflow.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+// Cache catalog trong bộ nhớ (Caffeine) đặt sau ProductRepository/CategoryRepository.
+// Mỗi lần ghi sẽ xóa đúng entry liên quan, TTL chỉ là lưới an toàn.
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String PRODUCTS = "products";
+    public static final String CATEGORIES = "categories";
+    public static final String CATEGORY_LIST = "categoryList";
+
+    @Value("${app.cache.products.maximum-size:10000}")
+    private long productsMaximumSize;
+
+    @Value("${app.cache.products.ttl:10m}")
+    private Duration productsTtl;
+
+    @Value("${app.cache.categories.maximum-size:1000}")
+    private long categoriesMaximumSize;
+
+    @Value("${app.cache.categories.ttl:30m}")
+    private Duration categoriesTtl;
+
+    @Bean
+    public CacheManager cacheManager(CacheInvalidationBus invalidationBus, ObjectProvider<MeterRegistry> meterRegistry) {
+        SimpleCacheManager cacheManager = new SimpleCacheManager();
+        cacheManager.setCaches(List.of(
+                buildCache(PRODUCTS, productsMaximumSize, productsTtl, invalidationBus, meterRegistry),
+                buildCache(CATEGORIES, categoriesMaximumSize, categoriesTtl, invalidationBus, meterRegistry),
+                buildCache(CATEGORY_LIST, 1, categoriesTtl, invalidationBus, meterRegistry)));
+        return cacheManager;
+    }
+
+    private BroadcastingCache buildCache(String name, long maximumSize, Duration ttl,
+                                         CacheInvalidationBus invalidationBus,
+                                         ObjectProvider<MeterRegistry> meterRegistry) {
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        // Cache được bọc nên Spring Boot không tự nhận diện; đăng ký metrics thủ công
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, nativeCache, name));
+        BroadcastingCache cache = new BroadcastingCache(new CaffeineCache(name, nativeCache), invalidationBus);
+        invalidationBus.register(cache);
+        return cache;
+    }
+}
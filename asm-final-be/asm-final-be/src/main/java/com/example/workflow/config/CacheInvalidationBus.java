@@ -0,0 +1,157 @@
+package com.example.workflow.config;
+
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Đồng bộ việc xóa cache giữa các node qua PostgreSQL LISTEN/NOTIFY.
+// pg_notify chạy trong transaction hiện tại nên chỉ được gửi khi transaction commit.
+@Component
+public class CacheInvalidationBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheInvalidationBus.class);
+
+    static final String CHANNEL = "catalog_cache";
+    private static final String CLEAR_ALL = "*";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    // Chỉ bật khi chạy nhiều node trên cùng một PostgreSQL
+    @Value("${app.cache.cluster-invalidation.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.cache.cluster-invalidation.poll-timeout-ms:1000}")
+    private int pollTimeoutMs;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, BroadcastingCache> caches = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    void register(BroadcastingCache cache) {
+        caches.put(cache.getName(), cache);
+    }
+
+    // key == null nghĩa là xóa toàn bộ cache
+    void publish(String cacheName, Object key) {
+        if (!enabled) {
+            return;
+        }
+        String payload = nodeId + "|" + cacheName + "|" + (key == null ? CLEAR_ALL : key.toString());
+        try {
+            jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> null, CHANNEL, payload);
+        } catch (DataAccessException e) {
+            // Các node khác vẫn tự hết hạn theo TTL
+            logger.atWarn().addKeyValue("cache", cacheName).setCause(e).log("Không gửi được thông báo xóa cache");
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        listenerThread = new Thread(this::listen, "cache-invalidation-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    private void listen() {
+        boolean reconnect = false;
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                if (reconnect) {
+                    // Có thể đã lỡ thông báo trong lúc mất kết nối
+                    caches.values().forEach(cache -> {
+                        cache.evictLocally(null);
+                        eventPublisher.publishEvent(new RemoteCacheInvalidationEvent(cache.getName(), null));
+                    });
+                }
+                logger.atInfo().addKeyValue("nodeId", nodeId).log("Đang lắng nghe thông báo xóa cache");
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollTimeoutMs);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            apply(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                logger.atWarn().setCause(e).log("Mất kết nối LISTEN, thử lại sau 5 giây");
+                reconnect = true;
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void apply(String payload) {
+        String[] parts = payload.split("\\|", 3);
+        if (parts.length != 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        BroadcastingCache cache = caches.get(parts[1]);
+        if (cache == null) {
+            return;
+        }
+        Object key = CLEAR_ALL.equals(parts[2]) ? null : parseKey(parts[2]);
+        cache.evictLocally(key);
+        // ETag do node đã ghi tăng trong catalog_version, node này nhận được qua lần đồng bộ kế tiếp;
+        // chỉ các index trong bộ nhớ cần được báo
+        eventPublisher.publishEvent(new RemoteCacheInvalidationEvent(parts[1], key));
+    }
+
+    // Key của các cache catalog là UUID hoặc chuỗi hằng
+    private static Object parseKey(String key) {
+        try {
+            return UUID.fromString(key);
+        } catch (IllegalArgumentException e) {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.workflow.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Tạo các index và ràng buộc mà JPA (ddl-auto: update) không sinh được, ví dụ index trên biểu thức
+// hay NOT NULL trên cột đã tồn tại.
+// Mọi câu lệnh đều idempotent nên chạy lại ở mỗi lần khởi động là an toàn.
+@Component
+public class DatabaseIndexInitializer {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseIndexInitializer.class);
+
+    // Khóa tự nhiên cho upsert hàng loạt sản phẩm (ProductBulkRepository: ON CONFLICT (category_id, name)).
+    // Thiếu index này thì mọi lần nhập Excel đều lỗi nên không tạo được là dừng khởi động.
+    private static final String PRODUCTS_NATURAL_KEY_INDEX =
+            "CREATE UNIQUE INDEX IF NOT EXISTS ux_products_category_name ON products (category_id, name)";
+
+    // Sản phẩm trùng (danh mục, tên) có từ trước. Không tự đổi tên hay gộp vì đó là dữ liệu catalog
+    // (đơn hàng và giỏ hàng trỏ tới từng dòng): admin phải sửa rồi khởi động lại.
+    private static final String DUPLICATE_PRODUCTS_SQL =
+            "SELECT category_id, name, string_agg(id::text, ', ' ORDER BY created_at, id) AS ids "
+                    + "FROM products GROUP BY category_id, name HAVING COUNT(*) > 1 "
+                    + "ORDER BY category_id, name LIMIT 50";
+
+    private static final List<String> STATEMENTS = List.of(
+            // Tra cứu đăng nhập theo email không phân biệt hoa thường
+            "CREATE UNIQUE INDEX IF NOT EXISTS ux_users_email_lower ON users (lower(email))",
+            // ddl-auto không đổi cột cũ thành NOT NULL: điền created_at còn trống rồi thêm ràng buộc
+            "UPDATE products SET created_at = now() WHERE created_at IS NULL",
+            "ALTER TABLE products ALTER COLUMN created_at SET NOT NULL",
+            PRODUCTS_NATURAL_KEY_INDEX,
+            // Gộp các dòng giỏ hàng trùng (user, sản phẩm) do thêm đồng thời trước đây, rồi tạo unique index
+            // cho upsert giỏ hàng (CartWriteRepository). Một câu lệnh nên gộp và xóa là nguyên tử.
+            "WITH dup AS (SELECT user_id, product_id, SUM(quantity) AS total, MIN(id::text)::uuid AS keep_id "
+                    + "FROM carts GROUP BY user_id, product_id HAVING COUNT(*) > 1), "
+                    + "removed AS (DELETE FROM carts c USING dup WHERE c.user_id = dup.user_id "
+                    + "AND c.product_id = dup.product_id AND c.id <> dup.keep_id) "
+                    + "UPDATE carts c SET quantity = dup.total FROM dup WHERE c.id = dup.keep_id",
+            "CREATE UNIQUE INDEX IF NOT EXISTS ux_carts_user_product ON carts (user_id, product_id)"
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DatabaseIndexInitializer(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Chạy trước các index trong bộ nhớ (cũng dựng lúc ApplicationReadyEvent): thiếu unique index thì dừng trước khi dựng
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void createIndexes() {
+        for (String statement : STATEMENTS) {
+            if (PRODUCTS_NATURAL_KEY_INDEX.equals(statement)) {
+                checkDuplicateProducts();
+            }
+            try {
+                jdbcTemplate.execute(statement);
+            } catch (DataAccessException e) {
+                if (PRODUCTS_NATURAL_KEY_INDEX.equals(statement)) {
+                    throw new IllegalStateException("Không thể tạo unique index ux_products_category_name, "
+                            + "cần dọn sản phẩm trùng (danh mục, tên) thủ công", e);
+                }
+                // Ví dụ: dữ liệu cũ trùng email khác hoa thường -> cần dọn dữ liệu thủ công
+                logger.warn("Không thể tạo index: {} ({})", statement, e.getMessage());
+            }
+        }
+    }
+
+    // Dừng khởi động và liệt kê các sản phẩm trùng để admin xử lý (tối đa 50 nhóm)
+    private void checkDuplicateProducts() {
+        List<String> duplicates = jdbcTemplate.query(DUPLICATE_PRODUCTS_SQL, (rs, rowNum) ->
+                "danh mục " + rs.getString("category_id") + ", tên \"" + rs.getString("name")
+                        + "\": " + rs.getString("ids"));
+        if (!duplicates.isEmpty()) {
+            throw new IllegalStateException("Không thể tạo unique index ux_products_category_name, "
+                    + "cần đổi tên hoặc xóa sản phẩm trùng (danh mục, tên):\n" + String.join("\n", duplicates));
+        }
+    }
+}
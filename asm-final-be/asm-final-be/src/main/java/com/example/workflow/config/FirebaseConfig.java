@@ -3,7 +3,10 @@ package com.example.workflow.config;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
@@ -11,9 +14,13 @@ import org.springframework.core.io.ClassPathResource;
 import java.io.IOException;
 import java.io.InputStream;
 
+// Chỉ khởi tạo Firebase khi dùng Firebase Storage, để chạy offline với app.storage.type=local
 @Configuration
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "firebase", matchIfMissing = true)
 public class FirebaseConfig {
 
+    private static final Logger logger = LoggerFactory.getLogger(FirebaseConfig.class);
+
     @Value("${firebase.service-account-file}")
     private String serviceAccountFile;
 
@@ -26,7 +33,7 @@ public class FirebaseConfig {
         String filePath = serviceAccountFile.startsWith("classpath:")
                 ? serviceAccountFile.replace("classpath:", "")
                 : serviceAccountFile;
-        System.out.println("Loading file: " + filePath); // Debug
+        logger.debug("Loading file: {}", filePath);
         InputStream serviceAccount = new ClassPathResource(filePath).getInputStream();
         FirebaseOptions options = FirebaseOptions.builder()
                 .setCredentials(GoogleCredentials.fromStream(serviceAccount))
@@ -1,11 +1,17 @@
 package com.example.workflow.config;
 
 import com.example.workflow.service.JwtService;
+import com.example.workflow.service.TokenRevocationService;
 import com.example.workflow.service.UserService;
+import com.example.workflow.utils.LogSampler;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -19,15 +25,28 @@ import org.springframework.web.filter.OncePerRequestFilter;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 
 @Component
 public class JwtAuthFilter extends OncePerRequestFilter {
 
+    private static final Logger logger = LoggerFactory.getLogger(JwtAuthFilter.class);
+
+    // Lấy mẫu 1/100 cho các log lặp lại ở mỗi request
+    private final LogSampler invalidTokenSampler = new LogSampler(100);
+    private final LogSampler authFailureSampler = new LogSampler(100);
+
     private final JwtService jwtService;
+    private final TokenRevocationService tokenRevocationService;
     private UserService userService;
 
-    public JwtAuthFilter(JwtService jwtService) {
+    // Bật để dựng principal từ claims thay vì tải user từ DB ở mỗi request
+    @Value("${app.security.stateless-auth:false}")
+    private boolean statelessAuth;
+
+    public JwtAuthFilter(JwtService jwtService, TokenRevocationService tokenRevocationService) {
         this.jwtService = jwtService;
+        this.tokenRevocationService = tokenRevocationService;
     }
 
     public void setUserService(UserService userService) {
@@ -43,38 +62,53 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         final String authorizationHeader = request.getHeader("Authorization");
 
         String userId = null;
-        String jwt = null;
+        Claims claims = null;
 
         // Kiểm tra và trích xuất JWT từ header
         if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
-            jwt = authorizationHeader.substring(7); // Loại bỏ "Bearer " prefix
+            String jwt = authorizationHeader.substring(7); // Loại bỏ "Bearer " prefix
             try {
-                userId = jwtService.extractUsername(jwt); // Trích xuất userId từ token
+                claims = jwtService.parseToken(jwt); // Parse và xác thực token đúng một lần
+                userId = claims.getSubject(); // Trích xuất userId từ token
             } catch (Exception e) {
-                System.err.println("Lỗi khi trích xuất userId từ token: " + e.getMessage());
+                // Token hết hạn/sai chữ ký xảy ra rất thường xuyên nên chỉ ghi log theo mẫu
+                if (invalidTokenSampler.sample()) {
+                    logger.atWarn()
+                            .addKeyValue("occurrences", invalidTokenSampler.occurrences())
+                            .log("Lỗi khi trích xuất userId từ token: {}", e.getMessage());
+                }
             }
         } else {
-            System.out.println("No Bearer token found in Authorization header");
+            logger.trace("No Bearer token found in Authorization header");
         }
 
         // Xác thực nếu userId tồn tại và chưa có xác thực trong SecurityContext
         if (userId != null && SecurityContextHolder.getContext().getAuthentication() == null) {
             UserDetails userDetails = null;
 
-            // Tải thông tin người dùng từ userId
-            try {
-                userDetails = this.userService.loadUserById(userId);
-            } catch (UsernameNotFoundException e) {
-                System.err.println("Không tìm thấy user với userId: " + userId);
-            } catch (Exception e) {
-                System.err.println("Lỗi khi tải UserDetails: " + e.getMessage());
+            // Trích xuất role từ token
+            String role = claims.get("role", String.class);
+
+            if (isRevoked(userId, claims)) {
+                logger.atInfo().addKeyValue("userId", userId).log("Token đã bị thu hồi");
+            } else if (statelessAuth) {
+                // Dựng principal trực tiếp từ claims đã ký, không truy vấn DB
+                userDetails = buildUserDetails(userId, role);
+            } else {
+                // Tải thông tin người dùng từ userId
+                try {
+                    userDetails = this.userService.loadUserById(userId);
+                } catch (UsernameNotFoundException e) {
+                    logger.atWarn().addKeyValue("userId", userId).log("Không tìm thấy user");
+                } catch (Exception e) {
+                    logger.atError().addKeyValue("userId", userId).setCause(e).log("Lỗi khi tải UserDetails");
+                }
             }
 
-            // Trích xuất role từ token
-            String role = jwtService.extractClaim(jwt, claims -> claims.get("role", String.class));
+            boolean tokenValid = userDetails != null && jwtService.validateClaims(claims, userDetails);
 
             // Kiểm tra và đặt xác thực nếu token hợp lệ
-            if (userDetails != null && jwtService.validateToken(jwt, userDetails) && role != null) {
+            if (tokenValid && role != null) {
 
                 // Tạo danh sách authorities từ role
                 List<GrantedAuthority> authorities = Collections.singletonList(
@@ -87,22 +121,41 @@ public class JwtAuthFilter extends OncePerRequestFilter {
                 authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(authToken);
             } else {
-                System.err.println("Xác thực thất bại cho userId: " + userId);
-                if (userDetails == null) {
-                    System.err.println("UserDetails là null cho userId: " + userId);
-                }
-                if (userDetails != null && !jwtService.validateToken(jwt, userDetails)) {
-                    System.err.println("Token không hợp lệ cho userId: " + userId);
-                }
-                if (role == null) {
-                    System.err.println("Role không tồn tại trong token cho userId: " + userId);
+                if (authFailureSampler.sample()) {
+                    logger.atWarn()
+                            .addKeyValue("userId", userId)
+                            .addKeyValue("userDetailsFound", userDetails != null)
+                            .addKeyValue("tokenValid", tokenValid)
+                            .addKeyValue("rolePresent", role != null)
+                            .addKeyValue("occurrences", authFailureSampler.occurrences())
+                            .log("Xác thực thất bại");
                 }
             }
         } else {
-            System.out.println("No userId extracted or authentication already exists");
+            logger.trace("No userId extracted or authentication already exists");
         }
 
         // Tiếp tục chuỗi bộ lọc
         chain.doFilter(request, response);
     }
+
+    // Token phát hành trước mốc thu hồi của user (đổi role, đổi mật khẩu, bị xóa) không còn hợp lệ
+    private boolean isRevoked(String userId, Claims claims) {
+        try {
+            return tokenRevocationService.isRevoked(UUID.fromString(userId), claims.getIssuedAt());
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    private UserDetails buildUserDetails(String userId, String role) {
+        if (role == null) {
+            return null;
+        }
+        return org.springframework.security.core.userdetails.User
+                .withUsername(userId)
+                .password("")
+                .authorities(role)
+                .build();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+package com.example.workflow.config;
+
+import lombok.Getter;
+
+// Phát ra khi nhận thông báo xóa cache từ node khác; key == null nghĩa là toàn bộ cache
+@Getter
+public class RemoteCacheInvalidationEvent {
+    private final String cacheName;
+    private final Object key;
+
+    public RemoteCacheInvalidationEvent(String cacheName, Object key) {
+        this.cacheName = cacheName;
+        this.key = key;
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.workflow.config;
 
 import com.example.workflow.service.UserService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
@@ -30,6 +31,10 @@ public class SecurityConfig {
     private final UserService userService;
     private final JwtAuthFilter jwtAuthFilter;
 
+    // Cost của BCrypt; khi tăng giá trị này, hash cũ được băm lại ở lần đăng nhập kế tiếp
+    @Value("${app.security.bcrypt-strength:10}")
+    private int bcryptStrength;
+
     public SecurityConfig(@Lazy UserService userService, JwtAuthFilter jwtAuthFilter) {
         this.userService = userService;
         this.jwtAuthFilter = jwtAuthFilter;
@@ -46,8 +51,10 @@ public class SecurityConfig {
                         // Cho phép truy cập không cần auth
                         .requestMatchers("/camunda/**", "/engine-rest/**"   ).permitAll()
                         .requestMatchers("/api/login", "/api/register", "/api/forgot-password", "/api/reset-password").permitAll()
-                        .requestMatchers(HttpMethod.GET, "/api/products").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/api/products", "/api/products/page", "/api/products/search", "/api/products/facets", "/api/products/*/image").permitAll()
                         .requestMatchers(HttpMethod.GET, "/api/categories" ).permitAll()
+                        .requestMatchers(HttpMethod.GET, "/api/blobs/**").permitAll() // Ảnh sản phẩm khi dùng storage local
+                        .requestMatchers("/api/guest-cart", "/api/guest-cart/batch").permitAll() // Giỏ hàng khách (token đã ký)
                         // Các endpoint khác yêu cầu xác thực
                         .anyRequest().authenticated()
                 )
@@ -94,6 +101,6 @@ public class SecurityConfig {
      */
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new BCryptPasswordEncoder(bcryptStrength);
     }
 }
\ No newline at end of file
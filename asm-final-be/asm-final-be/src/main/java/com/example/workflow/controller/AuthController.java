@@ -2,12 +2,17 @@ package com.example.workflow.controller;
 
 import com.example.workflow.dto.request.LoginRequest;
 import com.example.workflow.model.User;
+import com.example.workflow.service.CartService;
 import com.example.workflow.service.JwtService;
+import com.example.workflow.service.PasswordHashingService;
 import com.example.workflow.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Collections;
@@ -16,25 +21,32 @@ import java.util.Collections;
 @RequestMapping("/api")
 public class AuthController {
 
+    private static final Logger logger = LoggerFactory.getLogger(AuthController.class);
+
     @Autowired
     private UserService userService;
 
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private JwtService jwtService; // Thay JwtUtil bằng JwtService
 
     @Autowired
-    private JwtService jwtService; // Thay JwtUtil bằng JwtService
+    private CartService cartService;
 
     @PostMapping("/login")
     public ResponseEntity<?> login(@RequestBody LoginRequest loginRequest) {
-        // Tìm người dùng theo email
-        User user = userService.getAllUsers().stream()
-                .filter(u -> u.getEmail().equals(loginRequest.getEmail()))
-                .findFirst()
-                .orElse(null);
+        // Tìm người dùng theo email (truy vấn theo index) và kiểm tra mật khẩu
+        User user;
+        try {
+            user = userService.authenticate(loginRequest.getEmail(), loginRequest.getPassword())
+                    .orElse(null);
+        } catch (PasswordHashingService.HashingRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(e.getMessage());
+        }
 
         // Kiểm tra thông tin đăng nhập
-        if (user == null || !passwordEncoder.matches(loginRequest.getPassword(), user.getPassword())) {
+        if (user == null) {
             return ResponseEntity.status(401).body("Email hoặc mật khẩu không đúng");
         }
 
@@ -47,6 +59,15 @@ public class AuthController {
 
         // Tạo token bằng JwtService
         String token = jwtService.generateToken(userDetails, user);
+
+        // Gộp giỏ hàng lúc chưa đăng nhập; lỗi ở bước này không làm hỏng lần đăng nhập
+        if (loginRequest.getGuestCart() != null && !loginRequest.getGuestCart().isBlank()) {
+            try {
+                cartService.mergeGuestCart(user.getId(), loginRequest.getGuestCart());
+            } catch (RuntimeException e) {
+                logger.atWarn().addKeyValue("userId", user.getId()).setCause(e).log("Không gộp được giỏ hàng khách");
+            }
+        }
         return ResponseEntity.ok(Collections.singletonMap("token", token));
 
     }
@@ -1,8 +1,12 @@
 package com.example.workflow.controller;
 
+import com.example.workflow.dto.CartLineDTO;
+import com.example.workflow.dto.GuestCartDTO;
 import com.example.workflow.dto.request.AddCartRequest;
+import com.example.workflow.dto.request.CartBatchRequest;
 import com.example.workflow.model.Cart;
 import com.example.workflow.service.CartService;
+import com.example.workflow.service.GuestCartService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -17,9 +21,45 @@ import java.util.UUID;
 @RequestMapping("/api")
 public class CartController {
 
+    // Header mang token giỏ hàng khách (xem GuestCartService)
+    private static final String GUEST_CART_HEADER = "X-Guest-Cart";
+
     @Autowired
     private CartService cartService;
 
+    @Autowired
+    private GuestCartService guestCartService;
+
+    // Giỏ hàng của khách chưa đăng nhập: đọc từ token, tính giá theo dữ liệu hiện tại, không ghi DB
+    @GetMapping("/guest-cart")
+    public ResponseEntity<?> getGuestCart(@RequestHeader(value = GUEST_CART_HEADER, required = false) String token) {
+        try {
+            return ResponseEntity.ok(guestCartService.view(token));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Đã xảy ra lỗi khi lấy giỏ hàng");
+        }
+    }
+
+    // Sửa giỏ hàng khách; client thay token cũ bằng token trong kết quả
+    @PostMapping("/guest-cart/batch")
+    public ResponseEntity<?> applyGuestCartBatch(@RequestHeader(value = GUEST_CART_HEADER, required = false) String token,
+                                                 @RequestBody CartBatchRequest request) {
+        try {
+            GuestCartDTO guestCart = guestCartService.applyBatch(token, request);
+            return ResponseEntity.ok(guestCart);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Đã xảy ra lỗi khi cập nhật giỏ hàng");
+        }
+    }
+
     // Lấy danh sách sản phẩm trong giỏ hàng
     @GetMapping("/cart")
     @PreAuthorize("hasAuthority('USER')")
@@ -40,8 +80,8 @@ public class CartController {
     @PreAuthorize("hasAuthority('USER')")
     public ResponseEntity<?> addToCart(@RequestBody AddCartRequest request) {
         try {
-            Cart cart = cartService.addToCart(request.getProductId(), request.getQuantity());
-            return ResponseEntity.status(HttpStatus.CREATED).body(cart);
+            CartLineDTO cartLine = cartService.addToCart(request.getProductId(), request.getQuantity());
+            return ResponseEntity.status(HttpStatus.CREATED).body(cartLine);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         } catch (RuntimeException e) {
@@ -52,6 +92,22 @@ public class CartController {
         }
     }
 
+    // Áp dụng nhiều thay đổi giỏ hàng trong một request/transaction, trả về giỏ hàng sau khi cập nhật
+    @PostMapping("/cart/batch")
+    @PreAuthorize("hasAuthority('USER')")
+    public ResponseEntity<?> applyCartBatch(@RequestBody CartBatchRequest request) {
+        try {
+            return ResponseEntity.ok(cartService.applyBatch(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Đã xảy ra lỗi khi cập nhật giỏ hàng");
+        }
+    }
+
     // Cập nhật số lượng của một sản phẩm trong giỏ hàng
     @PutMapping("/cart/{cartId}")
     @PreAuthorize("hasAuthority('USER')")
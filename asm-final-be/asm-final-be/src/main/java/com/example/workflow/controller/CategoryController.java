@@ -1,12 +1,14 @@
 package com.example.workflow.controller;
 
 import com.example.workflow.model.Category;
+import com.example.workflow.service.CatalogVersionService;
 import com.example.workflow.service.CategoryService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 import java.util.UUID;
@@ -18,11 +20,13 @@ public class CategoryController {
     @Autowired
     private CategoryService categoryService;
 
+    @Autowired
+    private CatalogVersionService catalogVersionService;
+
     // Thêm mới loại sản phẩm
     @PostMapping("/categories")
     @PreAuthorize("hasAuthority('ADMIN')")
     public ResponseEntity<?> createCategory(@RequestBody Category category) {
-        System.out.println("POST /api/categories called");
         try {
             Category createdCategory = categoryService.createCategory(category);
             return ResponseEntity.status(HttpStatus.CREATED).body(createdCategory);
@@ -65,10 +69,23 @@ public class CategoryController {
     }
 
     // Lấy tất cả loại sản phẩm
+    // Hỗ trợ If-None-Match/If-Modified-Since: trả 304 trước khi chạm tới DB
     @GetMapping("/categories")
-    public ResponseEntity<List<Category>> getAllCategories() {
+    public ResponseEntity<List<Category>> getAllCategories(WebRequest webRequest) {
+        String eTag = catalogVersionService.getETag();
+        long lastModified = catalogVersionService.getLastModified();
+        if (webRequest.checkNotModified(eTag, lastModified)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .cacheControl(catalogVersionService.cacheControl())
+                    .build();
+        }
         List<Category> categories = categoryService.getAllCategories();
-        return ResponseEntity.ok(categories);
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .lastModified(lastModified)
+                .cacheControl(catalogVersionService.cacheControl())
+                .body(categories);
     }
 
     // Lấy thông tin một loại sản phẩm theo ID
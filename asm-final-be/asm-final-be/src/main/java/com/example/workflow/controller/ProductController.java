@@ -1,18 +1,37 @@
 package com.example.workflow.controller;
 
+import com.example.workflow.dto.ImportJobDTO;
+import com.example.workflow.dto.ProductFacetDTO;
+import com.example.workflow.dto.ProductPageDTO;
+import com.example.workflow.dto.request.ProductBulkUpdateRequest;
+import com.example.workflow.dto.request.ProductFacetRequest;
+import com.example.workflow.dto.request.ProductListRequest;
 import com.example.workflow.model.Product;
-import com.example.workflow.service.FirebaseStorageService;
+import com.example.workflow.service.BlobUploadExecutor;
+import com.example.workflow.service.CatalogVersionService;
+import com.example.workflow.service.ContentAddressedBlobService;
+import com.example.workflow.service.ProductBulkWriteService;
+import com.example.workflow.service.ProductFacetIndex;
+import com.example.workflow.service.ProductImageVariantService;
+import com.example.workflow.service.ProductImportJobService;
+import com.example.workflow.service.ProductSearchIndex;
 import com.example.workflow.service.ProductService;
-import net.sf.jasperreports.engine.JRException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.net.URI;
+import java.time.Duration;
 import java.util.List;
 import java.util.UUID;
 
@@ -20,11 +39,34 @@ import java.util.UUID;
 @RequestMapping("/api")
 public class ProductController {
 
+    private static final Logger logger = LoggerFactory.getLogger(ProductController.class);
+
     @Autowired
     private ProductService productService;
 
     @Autowired
-    private FirebaseStorageService firebaseStorageService;
+    private BlobUploadExecutor blobUploadExecutor;
+
+    @Autowired
+    private CatalogVersionService catalogVersionService;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private ProductFacetIndex productFacetIndex;
+
+    @Autowired
+    private ProductImportJobService productImportJobService;
+
+    @Autowired
+    private ProductBulkWriteService productBulkWriteService;
+
+    @Autowired
+    private ProductImageVariantService productImageVariantService;
+
+    @Autowired
+    private ContentAddressedBlobService contentAddressedBlobService;
 
     // Thêm sản phẩm mới (chỉ ADMIN)
     @PostMapping(value = "/products", consumes = {"multipart/form-data"})
@@ -57,12 +99,22 @@ public class ProductController {
 
             // Upload ảnh nếu có
             if (image != null && !image.isEmpty()) {
-                String imageUrl = firebaseStorageService.uploadFile(image, "product-images");
+                String imageUrl = blobUploadExecutor.upload(image, "product-images");
                 product.setImageUrl(imageUrl);
             }
 
-            Product createdProduct = productService.createProduct(product, categoryId);
+            Product createdProduct;
+            try {
+                createdProduct = productService.createProduct(product, categoryId);
+            } catch (RuntimeException e) {
+                releaseUploadedImage(product.getImageUrl());
+                throw e;
+            }
             return ResponseEntity.status(HttpStatus.CREATED).body(createdProduct);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        } catch (DuplicateKeyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         } catch (IOException e) {
@@ -88,11 +140,21 @@ public class ProductController {
             // Upload ảnh mới nếu có
             String imageUrl = null;
             if (image != null && !image.isEmpty()) {
-                imageUrl = firebaseStorageService.uploadFile(image, "product-images");
+                imageUrl = blobUploadExecutor.upload(image, "product-images");
             }
 
-            Product updatedProduct = productService.updateProduct(productId, name, categoryId, price, stock, imageUrl);
+            Product updatedProduct;
+            try {
+                updatedProduct = productService.updateProduct(productId, name, categoryId, price, stock, imageUrl);
+            } catch (RuntimeException e) {
+                releaseUploadedImage(imageUrl);
+                throw e;
+            }
             return ResponseEntity.ok(updatedProduct);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        } catch (DuplicateKeyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         } catch (IOException e) {
@@ -104,6 +166,21 @@ public class ProductController {
         }
     }
 
+    // Cập nhật giá/tồn kho cho nhiều sản phẩm trong một transaction (chỉ ADMIN).
+    // Mỗi sản phẩm có kết quả riêng; sản phẩm lệch version trả về CONFLICT thay vì ghi đè.
+    @PutMapping(value = "/products/bulk", consumes = {"application/json"})
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<?> bulkUpdateProducts(@RequestBody ProductBulkUpdateRequest request) {
+        try {
+            return ResponseEntity.ok(productBulkWriteService.updatePricesAndStock(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Đã xảy ra lỗi khi cập nhật sản phẩm hàng loạt");
+        }
+    }
+
     // Xóa sản phẩm (chỉ ADMIN)
     @DeleteMapping("/products/{productId}")
     @PreAuthorize("hasAuthority('ADMIN')")
@@ -120,10 +197,82 @@ public class ProductController {
     }
 
     // Lấy tất cả sản phẩm (USER và ADMIN đều xem được)
+    // Hỗ trợ If-None-Match/If-Modified-Since: trả 304 trước khi chạm tới DB
     @GetMapping("/products")
-    public ResponseEntity<List<Product>> getAllProducts() {
+    public ResponseEntity<List<Product>> getAllProducts(WebRequest webRequest) {
+        String eTag = catalogVersionService.getETag();
+        long lastModified = catalogVersionService.getLastModified();
+        if (webRequest.checkNotModified(eTag, lastModified)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .cacheControl(catalogVersionService.cacheControl())
+                    .build();
+        }
         List<Product> products = productService.getAllProducts();
-        return ResponseEntity.ok(products);
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .lastModified(lastModified)
+                .cacheControl(catalogVersionService.cacheControl())
+                .body(products);
+    }
+
+    // Danh sách sản phẩm phân trang theo cursor, lọc theo danh mục/giá/tồn kho
+    // Ví dụ: /api/products/page?categoryId=...&minPrice=100000&inStock=true&sort=price&direction=asc&limit=20
+    @GetMapping("/products/page")
+    public ResponseEntity<?> listProducts(@ModelAttribute ProductListRequest request, WebRequest webRequest) {
+        try {
+            String eTag = catalogVersionService.getETag();
+            long lastModified = catalogVersionService.getLastModified();
+            if (webRequest.checkNotModified(eTag, lastModified)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(eTag)
+                        .cacheControl(catalogVersionService.cacheControl())
+                        .build();
+            }
+            ProductPageDTO page = productService.listProducts(request);
+            return ResponseEntity.ok()
+                    .eTag(eTag)
+                    .lastModified(lastModified)
+                    .cacheControl(catalogVersionService.cacheControl())
+                    .body(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Đã xảy ra lỗi khi lấy danh sách sản phẩm");
+        }
+    }
+
+    // Tìm kiếm sản phẩm theo tên/danh mục, không phân biệt dấu, hỗ trợ gõ dở và sai chính tả nhẹ
+    // Ví dụ: /api/products/search?q=ao thun&limit=10
+    @GetMapping("/products/search")
+    public ResponseEntity<List<Product>> searchProducts(
+            @RequestParam("q") String query,
+            @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        return ResponseEntity.ok(productSearchIndex.search(query, limit));
+    }
+
+    // Lọc theo facet (danh mục, khoảng giá, tồn kho) kèm số lượng theo từng giá trị facet
+    @GetMapping("/products/facets")
+    public ResponseEntity<?> facetProducts(@ModelAttribute ProductFacetRequest request, WebRequest webRequest) {
+        try {
+            String eTag = catalogVersionService.getETag();
+            long lastModified = catalogVersionService.getLastModified();
+            if (webRequest.checkNotModified(eTag, lastModified)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(eTag)
+                        .cacheControl(catalogVersionService.cacheControl())
+                        .build();
+            }
+            ProductFacetDTO result = productFacetIndex.query(request);
+            return ResponseEntity.ok()
+                    .eTag(eTag)
+                    .lastModified(lastModified)
+                    .cacheControl(catalogVersionService.cacheControl())
+                    .body(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 
     // Lấy thông tin một sản phẩm theo ID (USER và ADMIN đều xem được)
@@ -140,7 +289,31 @@ public class ProductController {
         }
     }
 
-    // API import sản phẩm từ file Excel với JasperReports (chỉ ADMIN)
+    // Ảnh sản phẩm theo chiều rộng: chuyển hướng tới ảnh thu nhỏ phù hợp.
+    // Ảnh cũ chưa có biến thể thì trả ảnh gốc và xếp hàng sinh biến thể cho lần sau.
+    @GetMapping("/products/{productId}/image")
+    public ResponseEntity<?> getProductImage(@PathVariable UUID productId,
+                                             @RequestParam(value = "w", defaultValue = "320") int width) {
+        try {
+            Product product = productService.getProductById(productId);
+            String url = productImageVariantService.resolveImageUrl(product, width);
+            if (url == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Sản phẩm chưa có ảnh");
+            }
+            // Biến thể có thể xuất hiện sau vài giây: chỉ cache ngắn khi đang trả ảnh gốc
+            CacheControl cacheControl = url.equals(product.getImageUrl())
+                    ? CacheControl.maxAge(Duration.ofMinutes(1)).cachePublic()
+                    : CacheControl.maxAge(Duration.ofHours(1)).cachePublic();
+            return ResponseEntity.status(HttpStatus.FOUND)
+                    .location(URI.create(url))
+                    .cacheControl(cacheControl)
+                    .build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+
+    // API import sản phẩm từ file Excel: tạo job chạy nền và trả về ngay (chỉ ADMIN)
     @PostMapping("/products/import")
     @PreAuthorize("hasAuthority('ADMIN')")
     public ResponseEntity<?> importProductsFromExcel(@RequestParam("file") MultipartFile file) {
@@ -153,14 +326,53 @@ public class ProductController {
                 return ResponseEntity.badRequest().body("Vui lòng upload file Excel (.xlsx)");
             }
 
-            // Gọi service để xử lý file với JasperReports
-            List<Product> importedProducts = productService.importProductsFromExcel(file);
-            return ResponseEntity.status(HttpStatus.CREATED).body(importedProducts);
-        } catch (IOException | JRException e) {
+            ImportJobDTO job = productImportJobService.submit(file);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Đã xảy ra lỗi khi import sản phẩm: " + e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
+    // Tiến độ của lượt import: số dòng đã xử lý/lỗi, tốc độ, các lỗi đầu tiên (chỉ ADMIN)
+    @GetMapping("/products/import/{jobId}")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<?> getImportJob(@PathVariable("jobId") UUID jobId) {
+        try {
+            return ResponseEntity.ok(productImportJobService.getJob(jobId));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+
+    // Chạy tiếp lượt import bị lỗi từ chunk đã commit cuối cùng (chỉ ADMIN)
+    @PostMapping("/products/import/{jobId}/resume")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<?> resumeImportJob(@PathVariable("jobId") UUID jobId) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(productImportJobService.resume(jobId));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    // Ảnh đã upload (và ghi stored_blobs) nhưng ghi sản phẩm thất bại (trùng tên, sai danh mục...):
+    // không sản phẩm nào trỏ tới ảnh nên xếp hàng xóa ngay thay vì để object trên kho lưu trữ bị bỏ lại.
+    // releaseIfUnused đếm lại số sản phẩm dùng URL nên ảnh trùng nội dung với sản phẩm khác không bị xóa.
+    private void releaseUploadedImage(String imageUrl) {
+        if (imageUrl == null) {
+            return;
+        }
+        try {
+            contentAddressedBlobService.releaseIfUnused(imageUrl, null);
+        } catch (RuntimeException e) {
+            logger.atWarn().addKeyValue("imageUrl", imageUrl).setCause(e).log("Không xếp hàng xóa được ảnh vừa upload");
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.workflow.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+// Một dòng giỏ hàng sau khi ghi: đủ để client cập nhật giao diện mà không cần tải lại sản phẩm/user
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CartLineDTO {
+    private UUID cartId;
+    private UUID productId;
+    private int quantity;
+}
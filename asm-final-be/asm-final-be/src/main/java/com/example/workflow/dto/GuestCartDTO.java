@@ -0,0 +1,32 @@
+package com.example.workflow.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+// Giỏ hàng của khách chưa đăng nhập: token đã ký (client giữ và gửi lại) cùng giá tính theo dữ liệu hiện tại
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class GuestCartDTO {
+    private String token; // null khi giỏ rỗng
+    private List<Item> items;
+    private BigDecimal totalAmount;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Item {
+        private UUID productId;
+        private String name;
+        private String imageUrl;
+        private BigDecimal price;
+        private int quantity;
+        private int stock;
+        private BigDecimal subtotal;
+    }
+}
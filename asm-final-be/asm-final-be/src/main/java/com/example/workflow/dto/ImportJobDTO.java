@@ -0,0 +1,26 @@
+package com.example.workflow.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+// Trạng thái và tiến độ của một lượt import chạy nền
+@Data
+public class ImportJobDTO {
+    private UUID id;
+    private String fileName;
+    private String status;
+    private int rowsProcessed;
+    private int rowsImported;
+    private int rowsFailed;
+    private int lastCommittedRow;
+    private int attempts;
+    private double rowsPerSecond;
+    private String errorMessage;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private List<ImportResultDTO.RowError> errors; // Tối đa 100 lỗi đầu tiên
+}
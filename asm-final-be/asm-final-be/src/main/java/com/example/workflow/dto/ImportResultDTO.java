@@ -0,0 +1,26 @@
+package com.example.workflow.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Kết quả import: dòng lỗi được báo cáo riêng thay vì dừng cả file
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportResultDTO {
+    private int totalRows;
+    private int imported;
+    private int failed;
+    private List<RowError> errors; // Chỉ giữ tối đa một số lỗi đầu tiên để bộ nhớ không tăng theo file
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class RowError {
+        private int row; // Số dòng trong Excel (bắt đầu từ 1, dòng 1 là tiêu đề)
+        private String message;
+    }
+}
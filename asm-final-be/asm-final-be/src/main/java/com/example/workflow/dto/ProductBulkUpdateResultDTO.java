@@ -0,0 +1,30 @@
+package com.example.workflow.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.UUID;
+
+// Kết quả cập nhật hàng loạt: mỗi sản phẩm có trạng thái riêng, lỗi một dòng không hủy cả lô
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProductBulkUpdateResultDTO {
+    private int updated;
+    private int failed;
+    private List<ItemResult> results; // Cùng thứ tự với items trong request
+
+    public enum Status { UPDATED, CONFLICT, NOT_FOUND, INVALID }
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class ItemResult {
+        private UUID productId;
+        private Status status;
+        private Long version; // Version mới khi UPDATED, version hiện tại trong DB khi CONFLICT
+        private String message;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.workflow.dto;
+
+import com.example.workflow.model.Product;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Kết quả lọc kèm số lượng theo từng giá trị facet.
+// Số lượng của một facet được tính với bộ lọc của các facet còn lại (chọn nhiều trong cùng facet)
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProductFacetDTO {
+    private List<Product> items;
+    private int total;
+    private Map<UUID, Integer> categories;
+    private Map<String, Integer> priceBuckets;
+    private Map<String, Integer> stock; // inStock | outOfStock
+}
@@ -0,0 +1,17 @@
+package com.example.workflow.dto;
+
+import com.example.workflow.model.Product;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProductPageDTO {
+    private List<Product> items;
+    private String nextCursor; // null khi đã hết dữ liệu
+    private int limit;
+}
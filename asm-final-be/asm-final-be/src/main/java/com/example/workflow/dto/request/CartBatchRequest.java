@@ -0,0 +1,19 @@
+package com.example.workflow.dto.request;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.UUID;
+
+// Nhiều thay đổi giỏ hàng trong một request; áp dụng trong một transaction (lỗi một dòng thì hủy cả lô)
+@Data
+public class CartBatchRequest {
+    private List<Item> items;
+
+    @Data
+    public static class Item {
+        private UUID productId;
+        private Integer quantity; // Đặt số lượng tuyệt đối; 0 = xóa khỏi giỏ
+        private Integer delta; // Hoặc cộng/trừ so với số lượng hiện tại (về 0 thì xóa)
+    }
+}
@@ -3,6 +3,7 @@ package com.example.workflow.dto.request;
 public class LoginRequest {
     private String email;
     private String password;
+    private String guestCart; // Token giỏ hàng khách (nếu có), được gộp vào giỏ của user sau khi đăng nhập
 
     // Lấy email
     public String getEmail() {
@@ -23,4 +24,14 @@ public class LoginRequest {
     public void setPassword(String password) {
         this.password = password;
     }
+
+    // Lấy token giỏ hàng khách
+    public String getGuestCart() {
+        return guestCart;
+    }
+
+    // Đặt token giỏ hàng khách
+    public void setGuestCart(String guestCart) {
+        this.guestCart = guestCart;
+    }
 }
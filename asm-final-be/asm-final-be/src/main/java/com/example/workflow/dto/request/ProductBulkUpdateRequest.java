@@ -0,0 +1,21 @@
+package com.example.workflow.dto.request;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+// Cập nhật giá/tồn kho cho nhiều sản phẩm trong một request (JSON)
+@Data
+public class ProductBulkUpdateRequest {
+    private List<Item> items;
+
+    @Data
+    public static class Item {
+        private UUID productId;
+        private Long version; // Version client đang giữ; lệch với DB thì bỏ qua sản phẩm này
+        private BigDecimal price; // null = giữ nguyên
+        private Integer stock; // null = giữ nguyên
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.workflow.dto.request;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.UUID;
+
+// Bộ lọc cho API facet: chọn nhiều giá trị trong cùng facet (OR), giữa các facet là AND
+// Ví dụ: ?categoryId=...&categoryId=...&priceBucket=100000-200000&inStock=true
+@Data
+public class ProductFacetRequest {
+    private List<UUID> categoryId;
+    private List<String> priceBucket;
+    private Boolean inStock;       // true: còn hàng, false: hết hàng, null: tất cả
+    private Integer offset = 0;
+    private Integer limit = 20;
+}
@@ -0,0 +1,19 @@
+package com.example.workflow.dto.request;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+// Tham số lọc/sắp xếp cho API danh sách sản phẩm phân trang theo keyset
+@Data
+public class ProductListRequest {
+    private UUID categoryId;
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+    private Boolean inStock;       // true: còn hàng, false: hết hàng, null: tất cả
+    private String sort = "createdAt"; // createdAt | price | name
+    private String direction = "desc"; // asc | desc
+    private String cursor;         // Token trang kế tiếp lấy từ nextCursor của trang trước
+    private Integer limit = 20;
+}
@@ -0,0 +1,40 @@
+package com.example.workflow.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// Outbox: file cần xóa trên kho lưu trữ, ghi cùng transaction với thao tác xóa/đổi ảnh sản phẩm
+// và được BlobDeletionWorker xóa sau đó
+@Data
+@Entity
+@Table(name = "blob_deletion_outbox", indexes = {
+        @Index(name = "ix_blob_deletion_outbox_next_attempt", columnList = "next_attempt_at")
+})
+public class BlobDeletion {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(nullable = false, length = 500)
+    private String url;
+
+    // Ảnh gốc mà file này thuộc về (chính url nếu là ảnh gốc, ảnh gốc nếu là biến thể);
+    // nếu ảnh gốc được dùng lại trước khi xóa thì bỏ qua
+    @Column(name = "source_url", nullable = false, length = 500)
+    private String sourceUrl;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt = LocalDateTime.now();
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
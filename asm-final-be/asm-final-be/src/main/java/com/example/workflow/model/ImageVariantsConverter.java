@@ -0,0 +1,44 @@
+package com.example.workflow.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Lưu map biến thể ảnh (ví dụ "w320" -> URL) thành một cột JSON,
+// để đọc sản phẩm không cần join thêm bảng
+@Converter
+public class ImageVariantsConverter implements AttributeConverter<Map<String, String>, String> {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<LinkedHashMap<String, String>> TYPE = new TypeReference<>() {
+    };
+
+    @Override
+    public String convertToDatabaseColumn(Map<String, String> variants) {
+        if (variants == null || variants.isEmpty()) {
+            return null;
+        }
+        try {
+            return MAPPER.writeValueAsString(variants);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Không thể ghi danh sách biến thể ảnh", e);
+        }
+    }
+
+    @Override
+    public Map<String, String> convertToEntityAttribute(String json) {
+        if (json == null || json.isEmpty()) {
+            return null;
+        }
+        try {
+            return MAPPER.readValue(json, TYPE);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Dữ liệu biến thể ảnh không hợp lệ", e);
+        }
+    }
+}
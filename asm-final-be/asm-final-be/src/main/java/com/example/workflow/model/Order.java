@@ -1,5 +1,6 @@
 package com.example.workflow.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
 
@@ -30,6 +31,12 @@ public class Order {
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt = LocalDateTime.now();
 
+    // Tồn kho của đơn đang bị trừ và chưa trả lại. Chỉ ghi bằng JDBC (CheckoutRepository)
+    // để lần lưu entity sau đó không ghi đè cờ đã xóa khi trả kho.
+    @JsonIgnore
+    @Column(name = "stock_deducted", insertable = false, updatable = false)
+    private Boolean stockDeducted;
+
     @OneToMany(mappedBy = "order")
     private List<OrderItem> items;
 
@@ -0,0 +1,44 @@
+package com.example.workflow.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+// Outbox: yêu cầu khởi tạo quy trình Camunda, ghi cùng transaction với đơn hàng
+// và được ProcessStartDispatcher khởi tạo sau đó
+@Data
+@Entity
+@Table(name = "process_start_outbox", indexes = {
+        @Index(name = "ix_process_start_outbox_next_attempt", columnList = "next_attempt_at")
+})
+public class ProcessStart {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "process_key", nullable = false, length = 100)
+    private String processKey;
+
+    @Column(name = "business_key", nullable = false, unique = true, length = 100)
+    private String businessKey;
+
+    @Convert(converter = ProcessVariablesConverter.class)
+    @Column(nullable = false, length = 4000)
+    private Map<String, Object> variables;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    // Cũng dùng làm hạn giữ dòng khi một node đang khởi tạo: node chết giữa chừng thì dòng được lấy lại sau lease-ms
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt = LocalDateTime.now();
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
@@ -5,11 +5,22 @@ import lombok.Data;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.UUID;
 
 @Data
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = {
+        // Index phục vụ phân trang keyset: (cột sắp xếp, id), có và không có lọc theo danh mục
+        @Index(name = "ix_products_created_at_id", columnList = "created_at, id"),
+        @Index(name = "ix_products_price_id", columnList = "price, id"),
+        @Index(name = "ix_products_name_id", columnList = "name, id"),
+        @Index(name = "ix_products_category_created_at_id", columnList = "category_id, created_at, id"),
+        @Index(name = "ix_products_category_price_id", columnList = "category_id, price, id"),
+        @Index(name = "ix_products_category_name_id", columnList = "category_id, name, id"),
+        // Đếm tham chiếu ảnh trước khi xóa file
+        @Index(name = "ix_products_image_url", columnList = "image_url")
+})
 public class Product {
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
@@ -31,6 +42,19 @@ public class Product {
     @Column(name = "image_url", length = 500)
     private String imageUrl;
 
-    @Column(name = "created_at", updatable = false)
+    // Ảnh thu nhỏ theo chiều rộng ("w160", "w320", ...) sinh nền từ imageUrl; null khi chưa sinh.
+    // Luôn gán map mới thay vì sửa map hiện có.
+    @Convert(converter = ImageVariantsConverter.class)
+    @Column(name = "image_variants", length = 2000)
+    private Map<String, String> imageVariants;
+
+    // NOT NULL: là cột sắp xếp của phân trang keyset (ProductCursor), dữ liệu cũ được điền trong DatabaseIndexInitializer
+    @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt = LocalDateTime.now();
+
+    // Khóa lạc quan: cập nhật hàng loạt và trừ tồn kho không ghi đè lên nhau.
+    // Default 0 để các dòng có sẵn trước khi thêm cột vẫn có version.
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
 }
\ No newline at end of file
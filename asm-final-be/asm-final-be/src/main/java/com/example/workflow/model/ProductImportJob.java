@@ -0,0 +1,61 @@
+package com.example.workflow.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// Một lượt import Excel chạy nền; tiến độ được cập nhật cùng transaction với mỗi chunk đã commit
+@Data
+@Entity
+@Table(name = "product_import_jobs")
+public class ProductImportJob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "file_name", length = 255)
+    private String fileName;
+
+    @Column(name = "file_path", nullable = false, length = 500)
+    private String filePath; // File upload được giữ lại để có thể chạy tiếp từ chunk cuối
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Status status = Status.QUEUED;
+
+    @Column(name = "rows_processed", nullable = false)
+    private int rowsProcessed;
+
+    @Column(name = "rows_imported", nullable = false)
+    private int rowsImported;
+
+    @Column(name = "rows_failed", nullable = false)
+    private int rowsFailed;
+
+    @Column(name = "last_committed_row", nullable = false)
+    private int lastCommittedRow = 1; // Dòng 1 là tiêu đề
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "error_message", length = 1000)
+    private String errorMessage;
+
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.workflow.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.util.UUID;
+
+// Lỗi của một dòng trong lượt import, được ghi cùng chunk chứa dòng đó
+@Data
+@Entity
+@Table(name = "product_import_job_errors", indexes = {
+        @Index(name = "ix_product_import_job_errors_job_row", columnList = "job_id, row_num")
+})
+public class ProductImportJobError {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "job_id", nullable = false)
+    private UUID jobId;
+
+    @Column(name = "row_num", nullable = false)
+    private int rowNumber;
+
+    @Column(nullable = false, length = 500)
+    private String message;
+}
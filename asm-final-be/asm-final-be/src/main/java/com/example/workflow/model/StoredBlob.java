@@ -0,0 +1,30 @@
+package com.example.workflow.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+// Chỉ mục nội dung -> URL của file đã upload, để cùng một nội dung chỉ lưu một lần
+@Data
+@Entity
+@Table(name = "stored_blobs", indexes = {
+        @Index(name = "ix_stored_blobs_url", columnList = "url")
+})
+public class StoredBlob {
+    @Id
+    @Column(length = 64)
+    private String sha256; // Hex của SHA-256 nội dung
+
+    @Column(nullable = false, length = 500)
+    private String url;
+
+    @Column(nullable = false)
+    private long size;
+
+    @Column(name = "content_type", length = 100)
+    private String contentType;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
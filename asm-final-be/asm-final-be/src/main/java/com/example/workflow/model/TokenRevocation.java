@@ -0,0 +1,19 @@
+package com.example.workflow.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.util.UUID;
+
+// Mốc thu hồi token theo user: mọi token phát hành trước revokedAt đều bị từ chối
+@Data
+@Entity
+@Table(name = "user_token_revocations")
+public class TokenRevocation {
+    @Id
+    @Column(name = "user_id")
+    private UUID userId; // Không khóa ngoại để vẫn giữ được mốc khi user đã bị xóa
+
+    @Column(name = "revoked_at", nullable = false)
+    private Long revokedAt; // Epoch millis
+}
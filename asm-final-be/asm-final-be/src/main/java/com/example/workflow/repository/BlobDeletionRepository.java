@@ -0,0 +1,18 @@
+package com.example.workflow.repository;
+
+import com.example.workflow.model.BlobDeletion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public interface BlobDeletionRepository extends JpaRepository<BlobDeletion, UUID> {
+    // SKIP LOCKED: nhiều node cùng chạy worker mà không xử lý trùng một dòng
+    @Query(value = "SELECT * FROM blob_deletion_outbox WHERE next_attempt_at <= :now AND attempts < :maxAttempts "
+            + "ORDER BY next_attempt_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<BlobDeletion> lockDueBatch(@Param("now") LocalDateTime now, @Param("maxAttempts") int maxAttempts,
+                                    @Param("limit") int limit);
+}
@@ -0,0 +1,143 @@
+package com.example.workflow.repository;
+
+import com.example.workflow.dto.CartLineDTO;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+// Ghi giỏ hàng bằng một câu lệnh mỗi thao tác: upsert theo unique index ux_carts_user_product
+// (tạo trong DatabaseIndexInitializer) và kiểm tra tồn kho ngay trong câu lệnh.
+@Repository
+public class CartWriteRepository {
+
+    // Cộng thêm số lượng; không có dòng trả về nghĩa là sản phẩm không tồn tại hoặc không đủ hàng
+    private static final String ADD_SQL =
+            "INSERT INTO carts (id, user_id, product_id, quantity) "
+                    + "SELECT ?, ?, p.id, ? FROM products p WHERE p.id = ? AND p.stock >= ? "
+                    + "ON CONFLICT (user_id, product_id) DO UPDATE SET quantity = carts.quantity + EXCLUDED.quantity "
+                    + "WHERE (SELECT p2.stock FROM products p2 WHERE p2.id = carts.product_id) "
+                    + ">= carts.quantity + EXCLUDED.quantity";
+
+    private static final String ADD_RETURNING_SQL = ADD_SQL + " RETURNING id, quantity";
+
+    // Đặt số lượng tuyệt đối
+    private static final String SET_SQL =
+            "INSERT INTO carts (id, user_id, product_id, quantity) "
+                    + "SELECT ?, ?, p.id, ? FROM products p WHERE p.id = ? AND p.stock >= ? "
+                    + "ON CONFLICT (user_id, product_id) DO UPDATE SET quantity = EXCLUDED.quantity";
+
+    // Giảm số lượng (không cần kiểm tra tồn kho); dòng về 0 được xóa bởi DELETE_EMPTY_SQL
+    private static final String DECREASE_SQL =
+            "UPDATE carts SET quantity = quantity - ? WHERE user_id = ? AND product_id = ?";
+
+    private static final String DELETE_SQL =
+            "DELETE FROM carts WHERE user_id = ? AND product_id = ?";
+
+    private static final String DELETE_EMPTY_SQL =
+            "DELETE FROM carts WHERE user_id = ? AND quantity <= 0";
+
+    // Ghi dòng từ CartStore: tồn kho đã kiểm tra lúc thêm vào giỏ nên không kiểm tra lại.
+    // Sản phẩm/user đã bị xóa thì SELECT không trả dòng nào, lô vẫn ghi được phần còn lại.
+    // Ghi đè cả id để id trong DB khớp với id mà CartStore đã trả cho client.
+    private static final String UPSERT_LINE_SQL =
+            "INSERT INTO carts (id, user_id, product_id, quantity) "
+                    + "SELECT ?, u.id, p.id, ? FROM products p JOIN users u ON u.id = ? WHERE p.id = ? "
+                    + "ON CONFLICT (user_id, product_id) DO UPDATE SET id = EXCLUDED.id, quantity = EXCLUDED.quantity";
+
+    // Gộp giỏ khách lúc đăng nhập: cộng dồn, cắt theo tồn kho, không bao giờ giảm dòng đã có
+    private static final String MERGE_SQL =
+            "INSERT INTO carts (id, user_id, product_id, quantity) "
+                    + "SELECT ?, ?, p.id, LEAST(?, p.stock) FROM products p WHERE p.id = ? AND p.stock > 0 "
+                    + "ON CONFLICT (user_id, product_id) DO UPDATE SET quantity = GREATEST(carts.quantity, "
+                    + "LEAST(carts.quantity + EXCLUDED.quantity, "
+                    + "(SELECT p2.stock FROM products p2 WHERE p2.id = carts.product_id)))";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CartWriteRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Trả về dòng giỏ hàng sau khi cộng, hoặc rỗng nếu không thêm được
+    public Optional<CartLineDTO> add(UUID userId, UUID productId, int quantity) {
+        List<CartLineDTO> rows = jdbcTemplate.query(ADD_RETURNING_SQL,
+                (rs, rowNum) -> new CartLineDTO(rs.getObject("id", UUID.class), productId, rs.getInt("quantity")),
+                UUID.randomUUID(), userId, quantity, productId, quantity);
+        return rows.stream().findFirst();
+    }
+
+    // Các phần tử của kết quả tương ứng với productIds: 0 = không thêm được
+    public int[] addAll(UUID userId, List<UUID> productIds, List<Integer> quantities) {
+        return jdbcTemplate.batchUpdate(ADD_SQL, rows(userId, productIds, quantities));
+    }
+
+    public int[] setAll(UUID userId, List<UUID> productIds, List<Integer> quantities) {
+        return jdbcTemplate.batchUpdate(SET_SQL, rows(userId, productIds, quantities));
+    }
+
+    public void mergeAll(UUID userId, List<UUID> productIds, List<Integer> quantities) {
+        List<Object[]> args = new ArrayList<>(productIds.size());
+        for (int i = 0; i < productIds.size(); i++) {
+            args.add(new Object[]{UUID.randomUUID(), userId, quantities.get(i), productIds.get(i)});
+        }
+        jdbcTemplate.batchUpdate(MERGE_SQL, args);
+    }
+
+    public void decreaseAll(UUID userId, List<UUID> productIds, List<Integer> amounts) {
+        List<Object[]> args = new ArrayList<>(productIds.size());
+        for (int i = 0; i < productIds.size(); i++) {
+            args.add(new Object[]{amounts.get(i), userId, productIds.get(i)});
+        }
+        jdbcTemplate.batchUpdate(DECREASE_SQL, args);
+    }
+
+    public void deleteAll(UUID userId, List<UUID> productIds) {
+        jdbcTemplate.batchUpdate(DELETE_SQL, productIds.stream()
+                .map(productId -> new Object[]{userId, productId})
+                .toList());
+    }
+
+    public void deleteEmpty(UUID userId) {
+        jdbcTemplate.update(DELETE_EMPTY_SQL, userId);
+    }
+
+    public List<CartLineDTO> findLines(UUID userId) {
+        return jdbcTemplate.query("SELECT id, product_id, quantity FROM carts WHERE user_id = ?",
+                (rs, rowNum) -> new CartLineDTO(rs.getObject("id", UUID.class),
+                        rs.getObject("product_id", UUID.class), rs.getInt("quantity")),
+                userId);
+    }
+
+    // Mỗi phần tử: {cartId, quantity, userId, productId}
+    public void upsertLines(List<Object[]> lines) {
+        if (!lines.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_LINE_SQL, lines);
+        }
+    }
+
+    // Mỗi phần tử: {userId, productId}
+    public void deleteLines(List<Object[]> lines) {
+        if (!lines.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_SQL, lines);
+        }
+    }
+
+    // Tồn kho hiện tại, rỗng nếu sản phẩm không tồn tại (chỉ dùng để báo lỗi)
+    public Optional<Integer> findStock(UUID productId) {
+        return jdbcTemplate.query("SELECT stock FROM products WHERE id = ?",
+                (rs, rowNum) -> rs.getInt("stock"), productId).stream().findFirst();
+    }
+
+    private static List<Object[]> rows(UUID userId, List<UUID> productIds, List<Integer> quantities) {
+        List<Object[]> args = new ArrayList<>(productIds.size());
+        for (int i = 0; i < productIds.size(); i++) {
+            int quantity = quantities.get(i);
+            args.add(new Object[]{UUID.randomUUID(), userId, quantity, productIds.get(i), quantity});
+        }
+        return args;
+    }
+}
@@ -1,9 +1,44 @@
 package com.example.workflow.repository;
 
+import com.example.workflow.config.CacheConfig;
 import com.example.workflow.model.Category;
+import jakarta.persistence.LockModeType;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 public interface CategoryRepository extends JpaRepository<Category, UUID> {
+    // Đọc thẳng DB (không qua cache) và khóa dòng trước khi sửa
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Category c WHERE c.id = :id")
+    Optional<Category> findByIdForUpdate(@Param("id") UUID id);
+
+    @Cacheable(value = CacheConfig.CATEGORIES, key = "#p0")
+    Optional<Category> findById(UUID id);
+
+    @Cacheable(value = CacheConfig.CATEGORY_LIST, key = "'all'")
+    List<Category> findAll();
+
+    // Sản phẩm trong cache giữ kèm danh mục nên đổi/xóa danh mục cũng xóa cache sản phẩm
+    @Caching(evict = {
+            @CacheEvict(value = CacheConfig.CATEGORIES, key = "#p0.id", condition = "#p0.id != null"),
+            @CacheEvict(value = CacheConfig.CATEGORY_LIST, allEntries = true),
+            @CacheEvict(value = CacheConfig.PRODUCTS, allEntries = true)
+    })
+    Category save(Category category);
+
+    @Caching(evict = {
+            @CacheEvict(value = CacheConfig.CATEGORIES, key = "#p0.id"),
+            @CacheEvict(value = CacheConfig.CATEGORY_LIST, allEntries = true),
+            @CacheEvict(value = CacheConfig.PRODUCTS, allEntries = true)
+    })
+    void delete(Category category);
 }
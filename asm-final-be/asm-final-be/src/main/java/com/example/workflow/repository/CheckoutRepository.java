@@ -0,0 +1,99 @@
+package com.example.workflow.repository;
+
+import com.example.workflow.model.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Đường ghi của thanh toán bằng JDBC: số câu lệnh không phụ thuộc số dòng trong giỏ
+// (một DELETE ... RETURNING, một INSERT đơn hàng, một lô INSERT order_items).
+@Repository
+public class CheckoutRepository {
+
+    // Lấy và xóa giỏ hàng trong một câu lệnh, kèm giá hiện tại của sản phẩm.
+    // Hai lượt thanh toán đồng thời của cùng user không thể cùng lấy được một dòng.
+    private static final String CLAIM_CART_SQL =
+            "DELETE FROM carts c USING products p WHERE c.user_id = ? AND p.id = c.product_id "
+                    + "RETURNING c.product_id, c.quantity, p.name, p.price, p.image_url";
+
+    // Tồn kho đã trừ ngay trong transaction thanh toán nên đơn hàng được đánh dấu stock_deducted
+    private static final String INSERT_ORDER_SQL =
+            "INSERT INTO orders (id, user_id, total_amount, status, created_at, stock_deducted) "
+                    + "VALUES (?, ?, ?, ?, ?, true)";
+
+    private static final String INSERT_ITEM_SQL =
+            "INSERT INTO order_items (id, order_id, product_id, quantity, price, subtotal) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String MARK_STOCK_DEDUCTED_SQL = "UPDATE orders SET stock_deducted = true WHERE id = ?";
+
+    // Xóa cờ stock_deducted và lấy số lượng cần trả lại trong một câu lệnh.
+    // Đơn đã trả (hoặc chưa từng trừ kho) không trả về dòng nào nên gọi lại nhiều lần không cộng kho hai lần.
+    private static final String CLAIM_STOCK_RELEASE_SQL =
+            "WITH released AS ("
+                    + "  UPDATE orders SET stock_deducted = false WHERE id = ? AND stock_deducted = true RETURNING id"
+                    + ") "
+                    + "SELECT i.product_id, SUM(i.quantity) AS quantity FROM order_items i "
+                    + "JOIN released r ON r.id = i.order_id GROUP BY i.product_id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CheckoutRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public record CartLine(UUID productId, int quantity, String name, BigDecimal price, String imageUrl) {
+    }
+
+    public record ItemRow(UUID id, UUID productId, int quantity, BigDecimal price, BigDecimal subtotal) {
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<CartLine> claimCart(UUID userId) {
+        return jdbcTemplate.query(CLAIM_CART_SQL, (rs, rowNum) -> new CartLine(
+                rs.getObject("product_id", UUID.class),
+                rs.getInt("quantity"),
+                rs.getString("name"),
+                rs.getBigDecimal("price"),
+                rs.getString("image_url")), userId);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void insertOrder(UUID orderId, UUID userId, BigDecimal totalAmount, Order.OrderStatus status,
+                            LocalDateTime createdAt) {
+        jdbcTemplate.update(INSERT_ORDER_SQL, orderId, userId, totalAmount, status.name(), Timestamp.valueOf(createdAt));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void insertItems(UUID orderId, List<ItemRow> items) {
+        List<Object[]> args = new ArrayList<>(items.size());
+        for (ItemRow item : items) {
+            args.add(new Object[]{item.id(), orderId, item.productId(), item.quantity(), item.price(), item.subtotal()});
+        }
+        jdbcTemplate.batchUpdate(INSERT_ITEM_SQL, args);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void markStockDeducted(UUID orderId) {
+        jdbcTemplate.update(MARK_STOCK_DEDUCTED_SQL, orderId);
+    }
+
+    // Số lượng theo sản phẩm cần trả lại kho; rỗng nếu đơn không còn giữ tồn kho
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Map<UUID, Integer> claimStockRelease(UUID orderId) {
+        Map<UUID, Integer> quantities = new HashMap<>();
+        jdbcTemplate.query(CLAIM_STOCK_RELEASE_SQL, rs -> {
+            quantities.put(rs.getObject("product_id", UUID.class), rs.getInt("quantity"));
+        }, orderId);
+        return quantities;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.workflow.repository;
+
+import com.example.workflow.model.ProcessStart;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public interface ProcessStartRepository extends JpaRepository<ProcessStart, UUID> {
+    // SKIP LOCKED: nhiều node cùng chạy dispatcher mà không lấy trùng một dòng
+    @Query(value = "SELECT * FROM process_start_outbox WHERE next_attempt_at <= :now AND attempts < :maxAttempts "
+            + "ORDER BY next_attempt_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<ProcessStart> lockDueBatch(@Param("now") LocalDateTime now, @Param("maxAttempts") int maxAttempts,
+                                    @Param("limit") int limit);
+
+    // 0 nghĩa là dòng đã được node khác khởi tạo xong
+    @Modifying
+    @Query("DELETE FROM ProcessStart p WHERE p.id = :id")
+    int deleteClaimed(@Param("id") UUID id);
+
+    @Modifying
+    @Query("UPDATE ProcessStart p SET p.attempts = :attempts, p.nextAttemptAt = :nextAttemptAt, "
+            + "p.lastError = :lastError WHERE p.id = :id")
+    int recordFailure(@Param("id") UUID id, @Param("attempts") int attempts,
+                      @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("lastError") String lastError);
+
+    @Query("SELECT MIN(p.createdAt) FROM ProcessStart p WHERE p.attempts < :maxAttempts")
+    LocalDateTime findOldestPendingCreatedAt(@Param("maxAttempts") int maxAttempts);
+
+    long countByAttemptsLessThan(int maxAttempts);
+
+    // Dòng đã bỏ cuộc, giữ lại trong bảng để kiểm tra thủ công
+    long countByAttemptsGreaterThanEqual(int maxAttempts);
+}
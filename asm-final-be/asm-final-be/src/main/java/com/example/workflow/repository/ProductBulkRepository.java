@@ -0,0 +1,299 @@
+package com.example.workflow.repository;
+
+import com.example.workflow.dto.request.ProductBulkUpdateRequest;
+import com.example.workflow.model.Category;
+import com.example.workflow.model.ImageVariantsConverter;
+import com.example.workflow.model.Product;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Ghi sản phẩm hàng loạt bằng COPY vào bảng tạm rồi gộp vào products bằng INSERT ... ON CONFLICT.
+// Khóa tự nhiên là (category_id, name), cần unique index ux_products_category_name
+// (tạo trong DatabaseIndexInitializer).
+@Repository
+public class ProductBulkRepository {
+
+    // Bảng tạm theo phiên, tự xóa dữ liệu khi commit nên phải chạy trong transaction
+    private static final String CREATE_STAGING_SQL =
+            "CREATE TEMP TABLE IF NOT EXISTS product_staging ("
+                    + "seq bigint, id uuid, name varchar(200), category_id uuid, price numeric(10,2), "
+                    + "stock integer, image_url varchar(500), created_at timestamp"
+                    + ") ON COMMIT DELETE ROWS";
+
+    private static final String COPY_SQL =
+            "COPY product_staging (seq, id, name, category_id, price, stock, image_url, created_at) "
+                    + "FROM STDIN WITH (FORMAT csv)";
+
+    // DISTINCT ON: nếu một lô có hai dòng trùng khóa thì dòng sau thắng,
+    // tránh lỗi "ON CONFLICT DO UPDATE command cannot affect row a second time"
+    private static final String MERGE_SQL =
+            "INSERT INTO products (id, name, category_id, price, stock, image_url, created_at, version) "
+                    + "SELECT id, name, category_id, price, stock, image_url, COALESCE(created_at, now()), 0 FROM ("
+                    + "  SELECT DISTINCT ON (category_id, name) * FROM product_staging"
+                    + "  ORDER BY category_id, name, seq DESC"
+                    + ") s "
+                    + "ON CONFLICT (category_id, name) DO UPDATE SET "
+                    + "price = EXCLUDED.price, stock = EXCLUDED.stock, "
+                    + "image_url = COALESCE(EXCLUDED.image_url, products.image_url), "
+                    // Đổi ảnh thì biến thể cũ không còn đúng, để pipeline sinh lại
+                    + "image_variants = CASE WHEN EXCLUDED.image_url IS NULL OR EXCLUDED.image_url = products.image_url "
+                    + "THEN products.image_variants ELSE NULL END, "
+                    + "version = products.version + 1 "
+                    + "RETURNING id, name, category_id, price, stock, image_url, image_variants, created_at, version";
+
+    // Chỉ cập nhật khi version khớp; COALESCE giữ nguyên cột không được gửi lên
+    private static final String UPDATE_PRICE_STOCK_SQL =
+            "UPDATE products SET price = COALESCE(?, price), stock = COALESCE(?, stock), version = version + 1 "
+                    + "WHERE id = ? AND version = ?";
+
+    // Khóa các dòng sẽ đổi tồn kho theo thứ tự id để hai đơn hàng đồng thời không deadlock lẫn nhau
+    private static final String LOCK_STOCK_ROWS_SQL =
+            "SELECT id FROM products WHERE id = ANY(?) ORDER BY id FOR UPDATE";
+
+    // Trừ kho có điều kiện cho cả đơn trong một câu lệnh; RETURNING trả dòng sau khi ghi
+    // nên người gọi dựng dữ liệu cho index mà không phải đọc lại sản phẩm
+    private static final String DECREMENT_STOCK_SQL =
+            "UPDATE products p SET stock = p.stock - r.quantity, version = p.version + 1 "
+                    + "FROM unnest(?, ?) AS r(id, quantity) WHERE p.id = r.id AND p.stock >= r.quantity "
+                    + "RETURNING p.id, p.name, p.category_id, p.price, p.stock, p.image_url, p.image_variants, "
+                    + "p.created_at, p.version";
+
+    // Trả lại tồn kho của đơn hàng không được giao; sản phẩm đã bị xóa thì bỏ qua
+    private static final String RESTORE_STOCK_SQL =
+            "UPDATE products p SET stock = p.stock + r.quantity, version = p.version + 1 "
+                    + "FROM unnest(?, ?) AS r(id, quantity) WHERE p.id = r.id "
+                    + "RETURNING p.id, p.name, p.category_id, p.price, p.stock, p.image_url, p.image_variants, "
+                    + "p.created_at, p.version";
+
+    // Chỉ ghi khi ảnh gốc chưa đổi trong lúc sinh biến thể; không tăng version vì đây là dữ liệu dẫn xuất
+    private static final String UPDATE_IMAGE_VARIANTS_SQL =
+            "UPDATE products SET image_variants = ? WHERE id = ? AND image_url = ?";
+
+    private static final ImageVariantsConverter IMAGE_VARIANTS_CONVERTER = new ImageVariantsConverter();
+
+    // Gửi COPY theo từng khối để không giữ cả lô dưới dạng byte trong bộ nhớ
+    private static final int COPY_BUFFER_BYTES = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+
+    public ProductBulkRepository(JdbcTemplate jdbcTemplate, DataSource dataSource) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSource = dataSource;
+    }
+
+    // Trả về các dòng thực tế trong DB sau khi gộp (id cũ được giữ nếu sản phẩm đã tồn tại).
+    // categories phải chứa mọi category_id xuất hiện trong products.
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<Product> upsert(List<Product> products, Map<UUID, Category> categories) {
+        if (products.isEmpty()) {
+            return List.of();
+        }
+        jdbcTemplate.execute(CREATE_STAGING_SQL);
+        jdbcTemplate.execute("TRUNCATE product_staging");
+        copyToStaging(products);
+
+        return jdbcTemplate.query(MERGE_SQL, (rs, rowNum) -> {
+            Product product = mapProduct(rs);
+            product.setCategory(categories.get(rs.getObject("category_id", UUID.class)));
+            return product;
+        });
+    }
+
+    // Cập nhật giá/tồn kho bằng JDBC batch thay vì find + save từng entity.
+    // Phần tử thứ i của kết quả là số dòng được cập nhật: 0 nghĩa là lệch version hoặc không tồn tại.
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int[] updatePriceAndStock(List<ProductBulkUpdateRequest.Item> items) {
+        if (items.isEmpty()) {
+            return new int[0];
+        }
+        return jdbcTemplate.batchUpdate(UPDATE_PRICE_STOCK_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ProductBulkUpdateRequest.Item item = items.get(i);
+                ps.setBigDecimal(1, item.getPrice());
+                if (item.getStock() != null) {
+                    ps.setInt(2, item.getStock());
+                } else {
+                    ps.setNull(2, Types.INTEGER);
+                }
+                ps.setObject(3, item.getProductId());
+                ps.setLong(4, item.getVersion());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return items.size();
+            }
+        });
+    }
+
+    // Trả về các sản phẩm đã trừ kho; sản phẩm không tồn tại hoặc không đủ hàng không có trong kết quả.
+    // Danh mục của sản phẩm chỉ có id (category_id), người gọi tự gắn bản đầy đủ.
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<Product> decrementStock(List<UUID> productIds, List<Integer> quantities) {
+        return updateStock(DECREMENT_STOCK_SQL, productIds, quantities);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<Product> restoreStock(List<UUID> productIds, List<Integer> quantities) {
+        return updateStock(RESTORE_STOCK_SQL, productIds, quantities);
+    }
+
+    private List<Product> updateStock(String sql, List<UUID> productIds, List<Integer> quantities) {
+        if (productIds.isEmpty()) {
+            return List.of();
+        }
+        // UPDATE ... FROM unnest không đảm bảo thứ tự ghi dòng nên khóa trước theo id
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(LOCK_STOCK_ROWS_SQL);
+            ps.setArray(1, connection.createArrayOf("uuid", productIds.toArray()));
+            return ps;
+        }, rs -> {
+        });
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setArray(1, connection.createArrayOf("uuid", productIds.toArray()));
+            ps.setArray(2, connection.createArrayOf("int4", quantities.toArray()));
+            return ps;
+        }, (rs, rowNum) -> {
+            Product product = mapProduct(rs);
+            Category category = new Category();
+            category.setId(rs.getObject("category_id", UUID.class));
+            product.setCategory(category);
+            return product;
+        });
+    }
+
+    // Trả về false nếu sản phẩm đã bị xóa hoặc đã đổi sang ảnh khác
+    public boolean updateImageVariants(UUID productId, String imageUrl, Map<String, String> variants) {
+        return jdbcTemplate.update(UPDATE_IMAGE_VARIANTS_SQL,
+                IMAGE_VARIANTS_CONVERTER.convertToDatabaseColumn(variants), productId, imageUrl) > 0;
+    }
+
+    // Version hiện tại của các sản phẩm, dùng để phân biệt lệch version với không tồn tại
+    public Map<UUID, Long> findVersions(Collection<UUID> ids) {
+        Map<UUID, Long> versions = new HashMap<>();
+        if (ids.isEmpty()) {
+            return versions;
+        }
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement("SELECT id, version FROM products WHERE id = ANY(?)");
+            ps.setArray(1, connection.createArrayOf("uuid", ids.toArray()));
+            return ps;
+        }, rs -> {
+            versions.put(rs.getObject("id", UUID.class), rs.getLong("version"));
+        });
+        return versions;
+    }
+
+    private void copyToStaging(List<Product> products) {
+        // Lấy đúng kết nối đang gắn với transaction hiện tại để bảng tạm và COPY cùng phiên
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            CopyIn copyIn = copyManager.copyIn(COPY_SQL);
+            try {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream(COPY_BUFFER_BYTES * 2);
+                StringBuilder line = new StringBuilder(256);
+                long seq = 0;
+                for (Product product : products) {
+                    line.setLength(0);
+                    appendRow(line, seq++, product);
+                    buffer.writeBytes(line.toString().getBytes(StandardCharsets.UTF_8));
+                    if (buffer.size() >= COPY_BUFFER_BYTES) {
+                        copyIn.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+                        buffer.reset();
+                    }
+                }
+                if (buffer.size() > 0) {
+                    copyIn.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+                }
+                copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("Không thể COPY sản phẩm vào bảng tạm", e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    private static void appendRow(StringBuilder line, long seq, Product product) {
+        UUID id = product.getId() != null ? product.getId() : UUID.randomUUID();
+        LocalDateTime createdAt = product.getCreatedAt() != null ? product.getCreatedAt() : LocalDateTime.now();
+        List<Object> values = new ArrayList<>(8);
+        values.add(seq);
+        values.add(id);
+        values.add(product.getName());
+        values.add(product.getCategory().getId());
+        values.add(product.getPrice().toPlainString());
+        values.add(product.getStock());
+        values.add(product.getImageUrl());
+        values.add(createdAt);
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            appendCsv(line, values.get(i));
+        }
+        line.append('\n');
+    }
+
+    // CSV của PostgreSQL: ô trống không có nháy là NULL, mọi giá trị khác đều được đặt trong nháy kép
+    private static void appendCsv(StringBuilder line, Object value) {
+        if (value == null) {
+            return;
+        }
+        String text = value.toString();
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    private static Product mapProduct(ResultSet rs) throws SQLException {
+        Product product = new Product();
+        product.setId(rs.getObject("id", UUID.class));
+        product.setName(rs.getString("name"));
+        product.setPrice(rs.getBigDecimal("price"));
+        product.setStock(rs.getInt("stock"));
+        product.setImageUrl(rs.getString("image_url"));
+        product.setImageVariants(IMAGE_VARIANTS_CONVERTER.convertToEntityAttribute(rs.getString("image_variants")));
+        product.setCreatedAt(rs.getObject("created_at", LocalDateTime.class));
+        product.setVersion(rs.getLong("version"));
+        return product;
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.workflow.repository;
+
+import com.example.workflow.model.ProductImportJobError;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface ProductImportJobErrorRepository extends JpaRepository<ProductImportJobError, UUID> {
+    List<ProductImportJobError> findTop100ByJobIdOrderByRowNumberAsc(UUID jobId);
+
+    long countByJobId(UUID jobId);
+}
@@ -0,0 +1,12 @@
+package com.example.workflow.repository;
+
+import com.example.workflow.model.ProductImportJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+public interface ProductImportJobRepository extends JpaRepository<ProductImportJob, UUID> {
+    List<ProductImportJob> findAllByStatusIn(Collection<ProductImportJob.Status> statuses);
+}
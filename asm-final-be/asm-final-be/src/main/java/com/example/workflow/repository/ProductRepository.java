@@ -1,21 +1,45 @@
 package com.example.workflow.repository;
 
+import com.example.workflow.config.CacheConfig;
 import com.example.workflow.model.Product;
 import jakarta.persistence.LockModeType;
 import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 public interface ProductRepository extends JpaRepository<Product, UUID> {
+    // Luôn đọc thẳng DB (không qua cache) và khóa dòng: dùng cho trừ tồn kho/cập nhật
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("SELECT p FROM Product p WHERE p.id = :id")
     Optional<Product> findByIdForUpdate(@Param("id") UUID id);
 
-    @CacheEvict(value = "products", key = "#product.id")
+    // Số sản phẩm còn dùng một ảnh: ảnh lưu theo nội dung nên nhiều sản phẩm có thể chung một URL
+    long countByImageUrl(String imageUrl);
+
+    List<Product> findTop5ByImageUrlAndImageVariantsIsNotNull(String imageUrl);
+
+    // Khóa tự nhiên (danh mục, tên) có unique index ux_products_category_name
+    boolean existsByCategory_IdAndName(UUID categoryId, String name);
+
+    @Cacheable(value = CacheConfig.PRODUCTS, key = "#p0")
+    Optional<Product> findById(UUID id);
+
+    @CacheEvict(value = CacheConfig.PRODUCTS, key = "#p0.id", condition = "#p0.id != null")
     Product save(Product product);
+
+    @CacheEvict(value = CacheConfig.PRODUCTS, allEntries = true)
+    <S extends Product> List<S> saveAll(Iterable<S> products);
+
+    @CacheEvict(value = CacheConfig.PRODUCTS, key = "#p0.id")
+    void delete(Product product);
+
+    @CacheEvict(value = CacheConfig.PRODUCTS, key = "#p0")
+    void deleteById(UUID id);
 }
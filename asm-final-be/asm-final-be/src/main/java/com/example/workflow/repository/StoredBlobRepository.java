@@ -0,0 +1,10 @@
+package com.example.workflow.repository;
+
+import com.example.workflow.model.StoredBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Optional;
+
+public interface StoredBlobRepository extends JpaRepository<StoredBlob, String> {
+    Optional<StoredBlob> findByUrl(String url);
+}
@@ -0,0 +1,18 @@
+package com.example.workflow.repository;
+
+import com.example.workflow.model.TokenRevocation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface TokenRevocationRepository extends JpaRepository<TokenRevocation, UUID> {
+    List<TokenRevocation> findAllByRevokedAtGreaterThan(Long revokedAt);
+
+    @Modifying
+    @Query("DELETE FROM TokenRevocation r WHERE r.revokedAt < :revokedAt")
+    int deleteOlderThan(@Param("revokedAt") Long revokedAt);
+}
@@ -2,10 +2,25 @@ package com.example.workflow.repository;
 
 import com.example.workflow.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 import java.util.UUID;
 
 public interface UserRepository extends JpaRepository<User, UUID> {
     Optional<User> findByEmail(String email);
+
+    // Dùng index ux_users_email_lower (lower(email)); tham số phải được chuẩn hóa sẵn
+    // Transaction đọc riêng để đăng nhập chỉ giữ kết nối trong lúc truy vấn
+    @Transactional(readOnly = true)
+    @Query("SELECT u FROM User u WHERE lower(u.email) = :email")
+    Optional<User> findByNormalizedEmail(@Param("email") String email);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.password = :password WHERE u.id = :id")
+    int updatePassword(@Param("id") UUID id, @Param("password") String password);
 }
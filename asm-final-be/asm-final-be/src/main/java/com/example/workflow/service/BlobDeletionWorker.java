@@ -0,0 +1,97 @@
+package com.example.workflow.service;
+
+import com.example.workflow.model.BlobDeletion;
+import com.example.workflow.repository.BlobDeletionRepository;
+import com.example.workflow.repository.ProductRepository;
+import com.example.workflow.repository.StoredBlobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Xóa file trong outbox theo lô, thử lại với backoff tăng dần.
+// Xóa sản phẩm chỉ ghi outbox nên không còn chờ kho lưu trữ bên ngoài.
+@Service
+public class BlobDeletionWorker {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlobDeletionWorker.class);
+
+    @Autowired
+    private BlobDeletionRepository blobDeletionRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private StoredBlobRepository storedBlobRepository;
+
+    @Autowired
+    private BlobStorageService blobStorageService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${app.storage.deletion.batch-size:50}")
+    private int batchSize;
+
+    // Quá số lần này thì dòng được giữ lại trong bảng để kiểm tra thủ công
+    @Value("${app.storage.deletion.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${app.storage.deletion.initial-backoff-ms:10000}")
+    private long initialBackoffMs;
+
+    @Value("${app.storage.deletion.max-backoff-ms:3600000}")
+    private long maxBackoffMs;
+
+    @Scheduled(fixedDelayString = "${app.storage.deletion.poll-interval-ms:5000}")
+    public void drain() {
+        // Lặp tới khi hết việc đến hạn, mỗi lô một transaction ngắn
+        while (Boolean.TRUE.equals(transactionTemplate.execute(status -> processBatch()))) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    // Trả về true nếu lô đầy (có thể còn việc)
+    private boolean processBatch() {
+        List<BlobDeletion> batch = blobDeletionRepository.lockDueBatch(LocalDateTime.now(), maxAttempts, batchSize);
+        for (BlobDeletion deletion : batch) {
+            if (isInUse(deletion.getSourceUrl())) {
+                // Ảnh được dùng lại (cùng nội dung upload lại) sau khi xếp hàng xóa
+                blobDeletionRepository.delete(deletion);
+                continue;
+            }
+            try {
+                blobStorageService.deleteFile(deletion.getUrl());
+                blobDeletionRepository.delete(deletion);
+            } catch (RuntimeException e) {
+                int attempts = deletion.getAttempts() + 1;
+                long backoff = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempts - 1, 20));
+                deletion.setAttempts(attempts);
+                deletion.setNextAttemptAt(LocalDateTime.now().plusNanos(backoff * 1_000_000));
+                String message = String.valueOf(e.getMessage());
+                deletion.setLastError(message.length() > 1000 ? message.substring(0, 1000) : message);
+                blobDeletionRepository.save(deletion);
+                logger.atWarn()
+                        .addKeyValue("url", deletion.getUrl())
+                        .addKeyValue("attempt", attempts)
+                        .addKeyValue("giveUp", attempts >= maxAttempts)
+                        .setCause(e)
+                        .log("Xóa file thất bại");
+            }
+        }
+        return batch.size() == batchSize;
+    }
+
+    private boolean isInUse(String sourceUrl) {
+        return productRepository.countByImageUrl(sourceUrl) > 0 || storedBlobRepository.findByUrl(sourceUrl).isPresent();
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.workflow.service;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+
+// Lưu trữ file (ảnh sản phẩm). Chọn backend bằng app.storage.type: firebase (mặc định) hoặc local.
+public interface BlobStorageService {
+
+    // Lưu file vào thư mục folder với tên mới (UUID) và trả về URL công khai để lưu vào DB
+    default String uploadFile(MultipartFile file, String folder) throws IOException {
+        return uploadFileAs(file, folder + "/" + UUID.randomUUID() + "_" + file.getOriginalFilename());
+    }
+
+    // Lưu file dưới đúng objectName (ghi đè nếu đã có) và trả về URL công khai
+    String uploadFileAs(MultipartFile file, String objectName) throws IOException;
+
+    // Ghi dữ liệu nhỏ (ví dụ ảnh thu nhỏ) vào đúng objectName và trả về URL công khai
+    String uploadBytes(String objectName, byte[] data, String contentType) throws IOException;
+
+    // Đọc file theo URL đã trả về từ backend này
+    InputStream openFile(String url) throws IOException;
+
+    // Tên object (đường dẫn trong kho) của URL, null nếu URL không thuộc backend này
+    String objectName(String url);
+
+    String publicUrl(String objectName);
+
+    // Xóa file theo URL đã trả về từ uploadFile; URL không thuộc backend này hoặc file không còn thì bỏ qua.
+    // Lỗi kho lưu trữ được ném ra (RuntimeException) để người gọi thử lại.
+    void deleteFile(String url);
+}
@@ -0,0 +1,94 @@
+package com.example.workflow.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Chạy upload ảnh trên pool I/O có giới hạn và timeout,
+// để kho lưu trữ chậm không giữ hết thread xử lý request của Tomcat.
+@Service
+public class BlobUploadExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlobUploadExecutor.class);
+
+    @Autowired
+    private ContentAddressedBlobService contentAddressedBlobService;
+
+    @Value("${app.storage.upload-threads:4}")
+    private int uploadThreads;
+
+    @Value("${app.storage.upload-queue-capacity:16}")
+    private int uploadQueueCapacity;
+
+    @Value("${app.storage.upload-timeout-seconds:30}")
+    private long uploadTimeoutSeconds;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                uploadThreads, uploadThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(uploadQueueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "blob-upload-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Chờ upload xong trong giới hạn thời gian; file multipart vẫn hợp lệ vì request chưa kết thúc
+    public String upload(MultipartFile file, String folder) throws IOException {
+        Future<String> future;
+        try {
+            future = executor.submit(() -> contentAddressedBlobService.upload(file, folder));
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("Hệ thống đang bận upload ảnh, vui lòng thử lại sau");
+        }
+        try {
+            return future.get(uploadTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            logger.atWarn()
+                    .addKeyValue("fileName", file.getOriginalFilename())
+                    .addKeyValue("timeoutSeconds", uploadTimeoutSeconds)
+                    .log("Upload ảnh quá thời gian");
+            throw new IOException("Upload ảnh quá thời gian " + uploadTimeoutSeconds + " giây");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Upload ảnh bị gián đoạn");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Không thể upload file: " + cause.getMessage(), cause);
+        }
+    }
+}
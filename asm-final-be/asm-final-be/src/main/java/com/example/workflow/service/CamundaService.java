@@ -3,6 +3,7 @@ package com.example.workflow.service;
 import com.example.workflow.model.Order;
 import com.example.workflow.model.OrderItem;
 import com.example.workflow.model.Product;
+import com.example.workflow.repository.CheckoutRepository;
 import com.example.workflow.repository.OrderRepository;
 import com.example.workflow.repository.ProductRepository;
 import org.camunda.bpm.engine.delegate.DelegateExecution;
@@ -10,8 +11,11 @@ import org.camunda.bpm.engine.delegate.JavaDelegate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 @Service("service")
@@ -23,6 +27,18 @@ public class CamundaService implements JavaDelegate {
     @Autowired
     ProductRepository productRepository;
 
+    @Autowired
+    CatalogVersionService catalogVersionService;
+
+    @Autowired
+    CheckoutRepository checkoutRepository;
+
+    @Autowired
+    ProductBulkWriteService productBulkWriteService;
+
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
+
     private static final Logger logger = LoggerFactory.getLogger(CamundaService.class);
     @Override
     public void execute(DelegateExecution execution) throws Exception {
@@ -58,9 +74,19 @@ public class CamundaService implements JavaDelegate {
 
         logger.info("Kiểm tra đơn hàng: {}", orderId);
 
+        // Đơn hàng tạo sau khi có giữ chỗ tồn kho đã được trừ kho lúc thanh toán: không khóa và trừ lại
+        if (Boolean.TRUE.equals(execution.getVariable("stockReserved"))) {
+            execution.setVariable("isInStock", true);
+            order.setStatus(Order.OrderStatus.CONFIRMED);
+            orderRepository.save(order);
+            logger.info("Tồn kho đã được trừ lúc thanh toán: orderId = {}", orderId);
+            return;
+        }
+
         // Kiểm tra tồn kho cho từng sản phẩm trong đơn hàng
         for (OrderItem detailRequest : order.getItems()) {
-            Product product = productRepository.findById(detailRequest.getProduct().getId()).orElse(null);
+            // Đọc trực tiếp DB (bỏ qua cache) để không bao giờ kiểm tra trên tồn kho cũ
+            Product product = productRepository.findByIdForUpdate(detailRequest.getProduct().getId()).orElse(null);
             if (product == null) {
                 logger.error("Sản phẩm không tồn tại với ID: {}", detailRequest.getProduct().getId());
                 orderIsValid = false;
@@ -89,13 +115,19 @@ public class CamundaService implements JavaDelegate {
         if (orderIsValid) {
             order.setStatus(Order.OrderStatus.CONFIRMED);
             // Trừ tồn kho ngay sau khi kiểm tra thành công
+            // Đánh dấu để trả lại kho nếu đơn kết thúc mà không giao
+            checkoutRepository.markStockDeducted(orderId);
+            List<Product> updatedProducts = new ArrayList<>();
             for (OrderItem detailRequest : order.getItems()) {
                 Product product = productRepository.findByIdForUpdate(detailRequest.getProduct().getId())
                         .orElseThrow(() -> new RuntimeException("Product not found with ID: " + detailRequest.getProduct().getId()));
                 product.setStock(product.getStock() - detailRequest.getQuantity());
-                productRepository.save(product);
+                updatedProducts.add(productRepository.save(product));
                 logger.info("Đã trừ tồn kho: Sản phẩm = {}, Stock mới = {}", product.getName(), product.getStock());
             }
+            // Tồn kho nằm trong dữ liệu catalog trả cho client
+            catalogVersionService.markChanged();
+            eventPublisher.publishEvent(ProductChangedEvent.upserted(updatedProducts));
         } else {
             order.setStatus(Order.OrderStatus.CANCELED);
         }
@@ -105,7 +137,7 @@ public class CamundaService implements JavaDelegate {
 
     // Xác nhận thanh toán
     private void confirmPayment(DelegateExecution execution) {
-        System.out.println("✅ Xác nhận thanh toán thành công.");
+        logger.info("Xác nhận thanh toán thành công");
         execution.setVariable("paymentConfirmed", true);
     }
 
@@ -123,9 +155,16 @@ public class CamundaService implements JavaDelegate {
         if (order != null) {
             order.setStatus(isPaymentSuccessful ? Order.OrderStatus.PAID : Order.OrderStatus.FAILED);
             orderRepository.save(order);
+            // Thanh toán thất bại thì đơn không được giao: trả lại tồn kho trong cùng transaction của quy trình
+            if (!isPaymentSuccessful) {
+                productBulkWriteService.restoreOrderStock(orderId);
+            }
         }
 
-        System.out.println("💰 Trạng thái thanh toán: " + (isPaymentSuccessful ? "✅ Thành công (PAYMENT_SUCCESS)" : "❌ Thất bại (PAYMENT_FAILED)"));
+        logger.atInfo()
+                .addKeyValue("orderId", orderId)
+                .addKeyValue("paymentStatus", isPaymentSuccessful ? "SUCCESS" : "FAILED")
+                .log("Trạng thái thanh toán");
     }
 
 
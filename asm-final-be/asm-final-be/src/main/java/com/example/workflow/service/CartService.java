@@ -1,49 +1,70 @@
 package com.example.workflow.service;
 
+import com.example.workflow.dto.CartLineDTO;
+import com.example.workflow.dto.request.CartBatchRequest;
 import com.example.workflow.model.Cart;
 import com.example.workflow.model.Product;
 import com.example.workflow.model.User;
 import com.example.workflow.repository.CartRepository;
+import com.example.workflow.repository.CartWriteRepository;
 import com.example.workflow.repository.ProductRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
 public class CartService {
 
+    private static final int MAX_BATCH_ITEMS = 100;
+
     @Autowired
     private CartRepository cartRepository;
 
+    @Autowired
+    private CartWriteRepository cartWriteRepository;
+
+    // Giỏ hàng trong bộ nhớ; khi bị tắt thì mọi thao tác ghi thẳng DB như trước
+    @Autowired
+    private CartStore cartStore;
+
+    // Tra sản phẩm qua cache để kiểm tra tồn kho và dựng dòng giỏ hàng không cần join
     @Autowired
     private ProductRepository productRepository;
 
+    // Giữ chỗ tồn kho theo dòng giỏ hàng, trên cả đường bộ nhớ và đường ghi thẳng DB
     @Autowired
-    private UserService userService;
+    private StockReservationService stockReservationService;
 
-    // Lấy thông tin người dùng hiện tại từ Spring Security
-    private User getCurrentUser() {
+    @Autowired
+    private GuestCartService guestCartService;
+
+    // Transaction chỉ mở cho đường ghi thẳng DB; đường bộ nhớ không mượn kết nối nào
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // ID người dùng hiện tại lấy thẳng từ token, không cần truy vấn bảng users
+    private UUID getCurrentUserId() {
         Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
         if (principal instanceof UserDetails) {
-            String userIdStr = ((UserDetails) principal).getUsername();
-            UUID userId = UUID.fromString(userIdStr);
-            return userService.getUserById(userId);
-        } else {
-            throw new RuntimeException("Không tìm thấy thông tin người dùng. Vui lòng đăng nhập.");
+            return UUID.fromString(((UserDetails) principal).getUsername());
         }
+        throw new RuntimeException("Không tìm thấy thông tin người dùng. Vui lòng đăng nhập.");
     }
 
-    // Thêm sản phẩm vào giỏ hàng
-    @Transactional
-    public Cart addToCart(UUID productId, Integer quantity) {
-        User user = getCurrentUser();
-
+    // Thêm sản phẩm vào giỏ hàng: một câu lệnh upsert, kiểm tra tồn kho trong cùng câu lệnh.
+    // Thêm đồng thời cùng sản phẩm không tạo dòng trùng nhờ unique index (user_id, product_id).
+    public CartLineDTO addToCart(UUID productId, Integer quantity) {
         // Kiểm tra dữ liệu đầu vào
         if (productId == null || quantity == null) {
             throw new IllegalArgumentException("ID sản phẩm và số lượng là bắt buộc");
@@ -51,87 +72,354 @@ public class CartService {
         if (quantity <= 0) {
             throw new IllegalArgumentException("Số lượng phải lớn hơn 0");
         }
+        UUID userId = getCurrentUserId();
+        if (cartStore.isEnabled()) {
+            Product product = findProduct(productId);
+            CartStore.Line line = cartStore.update(userId, cart -> {
+                CartStore.Line current = cart.get(productId);
+                int newQuantity = (current != null ? current.quantity() : 0) + quantity;
+                stockReservationService.hold(userId, productId, newQuantity, product.getStock());
+                return cart.set(productId, newQuantity);
+            });
+            return new CartLineDTO(line.cartId(), line.productId(), line.quantity());
+        }
+        if (!stockReservationService.isEnabled()) {
+            return cartWriteRepository.add(userId, productId, quantity)
+                    .orElseThrow(() -> addFailure(productId));
+        }
+        // Giữ chỗ theo số lượng upsert trả về, trong cùng transaction: phần còn lại đang được
+        // người khác giữ thì dòng vừa ghi bị rollback
+        Product product = findProduct(productId);
+        return transactionTemplate.execute(status -> {
+            CartLineDTO line = cartWriteRepository.add(userId, productId, quantity)
+                    .orElseThrow(() -> addFailure(productId));
+            stockReservationService.hold(userId, productId, line.getQuantity(), product.getStock());
+            return line;
+        });
+    }
 
-        // Kiểm tra sản phẩm
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new RuntimeException("Product not found"));
+    // Áp dụng nhiều thay đổi giỏ hàng trong một transaction, mỗi loại thay đổi là một lô JDBC
+    public List<Cart> applyBatch(CartBatchRequest request) {
+        List<CartBatchRequest.Item> items = request.getItems();
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("Danh sách thay đổi giỏ hàng không được để trống");
+        }
+        if (items.size() > MAX_BATCH_ITEMS) {
+            throw new IllegalArgumentException("Tối đa " + MAX_BATCH_ITEMS + " thay đổi mỗi lần");
+        }
+        UUID userId = getCurrentUserId();
 
-        // Kiểm tra xem sản phẩm đã tồn tại trong giỏ hàng của user chưa
-        Optional<Cart> existingCart = cartRepository.findByUserIdAndProductId(user.getId(), productId);
+        List<UUID> addIds = new ArrayList<>();
+        List<Integer> addQuantities = new ArrayList<>();
+        List<UUID> setIds = new ArrayList<>();
+        List<Integer> setQuantities = new ArrayList<>();
+        List<UUID> decreaseIds = new ArrayList<>();
+        List<Integer> decreaseAmounts = new ArrayList<>();
+        List<UUID> deleteIds = new ArrayList<>();
+        Set<UUID> seen = new HashSet<>();
+        for (CartBatchRequest.Item item : items) {
+            if (item.getProductId() == null) {
+                throw new IllegalArgumentException("ID sản phẩm là bắt buộc");
+            }
+            if (!seen.add(item.getProductId())) {
+                throw new IllegalArgumentException("Sản phẩm bị lặp trong request: " + item.getProductId());
+            }
+            if ((item.getQuantity() == null) == (item.getDelta() == null)) {
+                throw new IllegalArgumentException("Mỗi dòng cần đúng một trong hai trường quantity hoặc delta");
+            }
+            if (item.getQuantity() != null) {
+                if (item.getQuantity() < 0) {
+                    throw new IllegalArgumentException("Số lượng không được âm");
+                }
+                if (item.getQuantity() == 0) {
+                    deleteIds.add(item.getProductId());
+                } else {
+                    setIds.add(item.getProductId());
+                    setQuantities.add(item.getQuantity());
+                }
+            } else if (item.getDelta() > 0) {
+                addIds.add(item.getProductId());
+                addQuantities.add(item.getDelta());
+            } else if (item.getDelta() < 0) {
+                decreaseIds.add(item.getProductId());
+                decreaseAmounts.add(-item.getDelta());
+            }
+        }
 
-        if (existingCart.isPresent()) {
-            // Nếu sản phẩm đã tồn tại, cập nhật số lượng
-            Cart cart = existingCart.get();
-            int newQuantity = cart.getQuantity() + quantity;
-            if (product.getStock() < newQuantity) {
-                throw new RuntimeException("Insufficient stock");
+        if (cartStore.isEnabled()) {
+            return applyBatchInMemory(userId, items);
+        }
+
+        return transactionTemplate.execute(status -> {
+            int[] added = cartWriteRepository.addAll(userId, addIds, addQuantities);
+            for (int i = 0; i < added.length; i++) {
+                if (added[i] == 0) {
+                    throw addFailure(addIds.get(i));
+                }
             }
-            cart.setQuantity(newQuantity);
-            return cartRepository.save(cart);
-        } else {
-            // Nếu sản phẩm chưa tồn tại, tạo mới
-            if (product.getStock() < quantity) {
-                throw new RuntimeException("Insufficient stock");
+            int[] updated = cartWriteRepository.setAll(userId, setIds, setQuantities);
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0) {
+                    throw addFailure(setIds.get(i));
+                }
+            }
+            if (!decreaseIds.isEmpty()) {
+                cartWriteRepository.decreaseAll(userId, decreaseIds, decreaseAmounts);
+                cartWriteRepository.deleteEmpty(userId);
+            }
+            if (!deleteIds.isEmpty()) {
+                cartWriteRepository.deleteAll(userId, deleteIds);
+            }
+            List<Cart> carts = cartRepository.findByUserId(userId);
+            holdTouchedLines(userId, seen, carts);
+            return carts;
+        });
+    }
+
+    // Đặt giữ chỗ theo số lượng sau khi ghi cho các sản phẩm trong lô (dòng đã xóa thì giữ chỗ về 0).
+    // Thiếu hàng ở một dòng thì holdAll trả lại giữ chỗ cũ và ném lỗi, cả transaction ghi DB rollback.
+    private void holdTouchedLines(UUID userId, Set<UUID> productIds, List<Cart> carts) {
+        if (!stockReservationService.isEnabled()) {
+            return;
+        }
+        Map<UUID, Integer> quantities = new LinkedHashMap<>();
+        Map<UUID, Integer> stocks = new HashMap<>();
+        productIds.forEach(productId -> quantities.put(productId, 0));
+        for (Cart cart : carts) {
+            UUID productId = cart.getProduct().getId();
+            if (productIds.contains(productId)) {
+                quantities.put(productId, cart.getQuantity());
+                stocks.put(productId, cart.getProduct().getStock());
             }
-            Cart cart = new Cart();
-            cart.setUser(user);
-            cart.setProduct(product);
-            cart.setQuantity(quantity);
-            return cartRepository.save(cart);
         }
+        stockReservationService.holdAll(userId, quantities, stocks);
+    }
+
+    // Cả lô được áp dụng dưới khóa giỏ của user: lỗi ở một dòng thì không dòng nào được ghi nhận
+    private List<Cart> applyBatchInMemory(UUID userId, List<CartBatchRequest.Item> items) {
+        // Tra sản phẩm trước khi lấy khóa giỏ hàng
+        Map<UUID, Product> products = new HashMap<>();
+        for (CartBatchRequest.Item item : items) {
+            boolean increases = item.getQuantity() != null ? item.getQuantity() > 0 : item.getDelta() > 0;
+            if (increases) {
+                products.put(item.getProductId(), findProduct(item.getProductId()));
+            }
+        }
+        Map<UUID, Integer> stocks = new HashMap<>();
+        products.forEach((productId, product) -> stocks.put(productId, product.getStock()));
+        List<CartStore.Line> lines = cartStore.update(userId, cart -> {
+            Map<UUID, Integer> newQuantities = new LinkedHashMap<>();
+            for (CartBatchRequest.Item item : items) {
+                CartStore.Line current = cart.get(item.getProductId());
+                int currentQuantity = current != null ? current.quantity() : 0;
+                int newQuantity = item.getQuantity() != null
+                        ? item.getQuantity()
+                        : Math.max(0, currentQuantity + item.getDelta());
+                newQuantities.put(item.getProductId(), newQuantity);
+            }
+            // Giữ chỗ cả lô trước; thiếu hàng ở một dòng thì giỏ hàng không đổi
+            stockReservationService.holdAll(userId, newQuantities, stocks);
+            newQuantities.forEach(cart::set);
+            return cart.lines();
+        });
+        return toCarts(userId, lines);
+    }
+
+    // Gộp giỏ khách (token đã ký) vào giỏ của user lúc đăng nhập: cộng dồn số lượng, cắt theo tồn kho.
+    // Sản phẩm không còn hàng hoặc đã bị xóa thì bỏ qua thay vì làm hỏng lần đăng nhập.
+    public void mergeGuestCart(UUID userId, String guestCartToken) {
+        Map<UUID, Integer> guestLines = guestCartService.decode(guestCartToken);
+        if (guestLines.isEmpty()) {
+            return;
+        }
+        if (!cartStore.isEnabled()) {
+            // Một lô JDBC trong một transaction
+            List<UUID> productIds = new ArrayList<>(guestLines.keySet());
+            List<Integer> quantities = new ArrayList<>(guestLines.values());
+            transactionTemplate.executeWithoutResult(status -> {
+                cartWriteRepository.mergeAll(userId, productIds, quantities);
+                if (stockReservationService.isEnabled()) {
+                    holdMergedLines(userId, guestLines.keySet());
+                }
+            });
+            return;
+        }
+        Map<UUID, Product> products = new HashMap<>();
+        guestLines.keySet().forEach(productId ->
+                productRepository.findById(productId).ifPresent(product -> products.put(productId, product)));
+        // Các dòng được ghi nhận cùng lúc và xuống DB trong lượt flush kế tiếp như một lô upsert
+        cartStore.update(userId, cart -> {
+            guestLines.forEach((productId, quantity) -> {
+                Product product = products.get(productId);
+                if (product == null) {
+                    return;
+                }
+                CartStore.Line current = cart.get(productId);
+                int currentQuantity = current != null ? current.quantity() : 0;
+                int target = Math.min(currentQuantity + quantity, product.getStock());
+                if (target <= currentQuantity) {
+                    return;
+                }
+                try {
+                    stockReservationService.hold(userId, productId, target, product.getStock());
+                } catch (RuntimeException e) {
+                    return; // Phần còn lại đang được người khác giữ chỗ
+                }
+                cart.set(productId, target);
+            });
+            return null;
+        });
+    }
+
+    // Giữ chỗ cho các dòng vừa gộp theo số lượng trong DB. Không giữ được (người khác đang giữ phần còn lại)
+    // thì dòng vẫn được gộp như ở đường bộ nhớ bỏ qua, để không làm hỏng lần đăng nhập;
+    // lúc thanh toán ensureOthersCovered vẫn chặn việc lấy hàng người khác đang giữ.
+    private void holdMergedLines(UUID userId, Set<UUID> productIds) {
+        for (Cart cart : cartRepository.findByUserId(userId)) {
+            UUID productId = cart.getProduct().getId();
+            if (!productIds.contains(productId)) {
+                continue;
+            }
+            try {
+                stockReservationService.hold(userId, productId, cart.getQuantity(), cart.getProduct().getStock());
+            } catch (RuntimeException e) {
+                // Giữ nguyên giữ chỗ cũ
+            }
+        }
+    }
+
+    // Chỉ chạy khi upsert không ghi được dòng nào: phân biệt sản phẩm không tồn tại với hết hàng
+    private RuntimeException addFailure(UUID productId) {
+        return cartWriteRepository.findStock(productId)
+                .<RuntimeException>map(stock -> new RuntimeException("Insufficient stock"))
+                .orElseGet(() -> new RuntimeException("Product not found"));
     }
 
     // Lấy danh sách sản phẩm trong giỏ hàng
     public List<Cart> getCartItems() {
-        User user = getCurrentUser();
-        return cartRepository.findByUserId(user.getId());
+        UUID userId = getCurrentUserId();
+        if (cartStore.isEnabled()) {
+            return toCarts(userId, cartStore.lines(userId));
+        }
+        return cartRepository.findByUserId(userId);
     }
 
     // Cập nhật số lượng sản phẩm trong giỏ hàng
-    @Transactional
     public Cart updateCartQuantity(UUID cartId, Integer quantity) {
-        User user = getCurrentUser();
+        UUID userId = getCurrentUserId();
 
         // Kiểm tra dữ liệu đầu vào
         if (quantity == null || quantity <= 0) {
             throw new IllegalArgumentException("Số lượng phải lớn hơn 0");
         }
 
-        // Kiểm tra Cart
-        Cart cart = cartRepository.findById(cartId)
-                .orElseThrow(() -> new RuntimeException("Cart item not found"));
-
-        // Kiểm tra quyền sở hữu
-        if (!cart.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Unauthorized access to cart item");
+        if (cartStore.isEnabled()) {
+            // Dòng giỏ hàng chỉ tìm trong giỏ của chính user nên không cần kiểm tra quyền sở hữu
+            CartStore.Line line = findLine(userId, cartId);
+            Product product = findProduct(line.productId());
+            CartStore.Line updated = cartStore.update(userId, cart -> {
+                CartStore.Line current = cart.findByCartId(cartId);
+                if (current == null) {
+                    throw new RuntimeException("Cart item not found");
+                }
+                stockReservationService.hold(userId, current.productId(), quantity, product.getStock());
+                return cart.set(current.productId(), quantity);
+            });
+            return toCart(userId, updated, product);
         }
 
-        // Kiểm tra stock
-        Product product = cart.getProduct();
-        if (product.getStock() < quantity) {
-            throw new RuntimeException("Insufficient stock");
-        }
+        return transactionTemplate.execute(status -> {
+            // Kiểm tra Cart
+            Cart cart = cartRepository.findById(cartId)
+                    .orElseThrow(() -> new RuntimeException("Cart item not found"));
+
+            // Kiểm tra quyền sở hữu
+            if (!cart.getUser().getId().equals(userId)) {
+                throw new RuntimeException("Unauthorized access to cart item");
+            }
+
+            // Kiểm tra stock
+            Product product = cart.getProduct();
+            if (product.getStock() < quantity) {
+                throw new RuntimeException("Insufficient stock");
+            }
+            // Phần người khác đang giữ chỗ không được tính là còn hàng
+            if (stockReservationService.isEnabled()) {
+                stockReservationService.hold(userId, product.getId(), quantity, product.getStock());
+            }
 
-        // Cập nhật số lượng
-        cart.setQuantity(quantity);
-        return cartRepository.save(cart);
+            // Cập nhật số lượng
+            cart.setQuantity(quantity);
+            return cartRepository.save(cart);
+        });
     }
 
     // Xóa sản phẩm khỏi giỏ hàng
-    @Transactional
     public void removeFromCart(UUID cartId) {
-        User user = getCurrentUser();
+        UUID userId = getCurrentUserId();
 
-        // Kiểm tra Cart
-        Cart cart = cartRepository.findById(cartId)
-                .orElseThrow(() -> new RuntimeException("Cart item not found"));
+        if (cartStore.isEnabled()) {
+            cartStore.update(userId, cart -> {
+                CartStore.Line current = cart.findByCartId(cartId);
+                if (current == null) {
+                    throw new RuntimeException("Cart item not found");
+                }
+                stockReservationService.hold(userId, current.productId(), 0, 0);
+                return cart.set(current.productId(), 0);
+            });
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            // Kiểm tra Cart
+            Cart cart = cartRepository.findById(cartId)
+                    .orElseThrow(() -> new RuntimeException("Cart item not found"));
 
-        // Kiểm tra quyền sở hữu
-        if (!cart.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Unauthorized access to cart item");
+            // Kiểm tra quyền sở hữu
+            if (!cart.getUser().getId().equals(userId)) {
+                throw new RuntimeException("Unauthorized access to cart item");
+            }
+
+            // Xóa Cart và trả giữ chỗ của dòng
+            cartRepository.deleteById(cartId);
+            if (stockReservationService.isEnabled()) {
+                stockReservationService.hold(userId, cart.getProduct().getId(), 0, 0);
+            }
+        });
+    }
+
+    private CartStore.Line findLine(UUID userId, UUID cartId) {
+        CartStore.Line line = cartStore.update(userId, cart -> cart.findByCartId(cartId));
+        if (line == null) {
+            throw new RuntimeException("Cart item not found");
         }
+        return line;
+    }
+
+    private Product findProduct(UUID productId) {
+        return productRepository.findById(productId)
+                .orElseThrow(() -> new RuntimeException("Product not found"));
+    }
+
+    // Dựng dòng giỏ hàng từ bộ nhớ; sản phẩm đã bị xóa thì bỏ qua
+    private List<Cart> toCarts(UUID userId, List<CartStore.Line> lines) {
+        List<Cart> carts = new ArrayList<>(lines.size());
+        for (CartStore.Line line : lines) {
+            productRepository.findById(line.productId())
+                    .ifPresent(product -> carts.add(toCart(userId, line, product)));
+        }
+        return carts;
+    }
 
-        // Xóa Cart
-        cartRepository.deleteById(cartId);
+    // Chỉ gắn id của user: client không dùng thông tin user trong dòng giỏ hàng
+    private static Cart toCart(UUID userId, CartStore.Line line, Product product) {
+        User user = new User();
+        user.setId(userId);
+        Cart cart = new Cart();
+        cart.setId(line.cartId());
+        cart.setUser(user);
+        cart.setProduct(product);
+        cart.setQuantity(line.quantity());
+        return cart;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,368 @@
+package com.example.workflow.service;
+
+import com.example.workflow.dto.CartLineDTO;
+import com.example.workflow.repository.CartWriteRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+// Giỏ hàng giữ trong bộ nhớ, chia shard theo user id, mỗi shard một khóa riêng.
+// Đọc/ghi giỏ hàng không chạm DB: thay đổi được gộp theo (user, sản phẩm) và ghi xuống bảng carts
+// theo lô sau mỗi flush-interval-ms và khi tắt ứng dụng.
+// Chỉ đúng khi giỏ của một user luôn do cùng một node phục vụ (một node hoặc sticky session),
+// nên mặc định tắt (ghi thẳng DB) và phải bật rõ ràng bằng app.cart.store.enabled=true.
+@Service
+public class CartStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CartStore.class);
+
+    @Autowired
+    private CartWriteRepository cartWriteRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.cart.store.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.cart.store.shards:64}")
+    private int shardCount;
+
+    // Giỏ không được dùng trong khoảng này (và đã ghi hết xuống DB) thì bỏ khỏi bộ nhớ
+    @Value("${app.cart.store.idle-eviction-ms:1800000}")
+    private long idleEvictionMillis;
+
+    // Một dòng giỏ hàng trong bộ nhớ
+    public record Line(UUID cartId, UUID productId, int quantity) {
+    }
+
+    // Thay đổi chờ ghi; quantity = 0 nghĩa là xóa dòng
+    private record PendingWrite(UUID userId, UUID productId, UUID cartId, int quantity) {
+    }
+
+    private static final class UserCart {
+        private final Map<UUID, Line> lines = new LinkedHashMap<>();
+        private long lastAccess;
+    }
+
+    private static final class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        // Giữ từ lúc lấy thay đổi chờ ghi tới khi ghi xong: flush(userId) lúc thanh toán chỉ chờ lượt nền
+        // đang ghi dở của đúng shard đó, và hai lượt ghi cùng một dòng không đảo thứ tự
+        private final ReentrantLock flushLock = new ReentrantLock();
+        private final Map<UUID, UserCart> carts = new HashMap<>();
+        // userId -> productId -> thay đổi mới nhất; ghi nhiều lần trước khi flush chỉ còn một dòng
+        private Map<UUID, Map<UUID, PendingWrite>> dirty = new HashMap<>();
+    }
+
+    private Shard[] shards;
+
+    private TransactionTemplate flushTransaction;
+
+    @PostConstruct
+    void init() {
+        shards = new Shard[Math.max(1, shardCount)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard();
+        }
+        flushTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (enabled) {
+            flushAll();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public List<Line> lines(UUID userId) {
+        return update(userId, CartEditor::lines);
+    }
+
+    // Chạy thay đổi trên giỏ của user dưới khóa của shard. Thay đổi chỉ được ghi nhận khi change
+    // chạy xong không ném lỗi, nên một lô thay đổi được áp dụng trọn vẹn hoặc không gì cả.
+    public <T> T update(UUID userId, Function<CartEditor, T> change) {
+        Shard shard = shard(userId);
+        while (true) {
+            ensureLoaded(shard, userId);
+            shard.lock.lock();
+            try {
+                UserCart cart = shard.carts.get(userId);
+                if (cart == null) {
+                    continue; // Vừa bị bỏ khỏi bộ nhớ giữa hai bước: tải lại
+                }
+                cart.lastAccess = System.currentTimeMillis();
+                CartEditor editor = new CartEditor(cart);
+                T result = change.apply(editor);
+                editor.commit(shard, userId);
+                return result;
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    // Ghi ngay mọi thay đổi chưa flush của user (đồng bộ), dùng trước khi đọc giỏ từ DB lúc thanh toán.
+    // Phải gọi ngoài transaction: ghi trong transaction riêng, gọi bên trong thì một request giữ hai kết nối
+    // và thanh toán thất bại sẽ cuốn theo dữ liệu giỏ vừa ghi.
+    public void flush(UUID userId) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("CartStore.flush phải được gọi ngoài transaction");
+        }
+        Shard shard = shard(userId);
+        shard.flushLock.lock();
+        try {
+            Map<UUID, PendingWrite> pending;
+            shard.lock.lock();
+            try {
+                pending = shard.dirty.remove(userId);
+            } finally {
+                shard.lock.unlock();
+            }
+            if (pending == null || pending.isEmpty()) {
+                return;
+            }
+            List<PendingWrite> writes = new ArrayList<>(pending.values());
+            try {
+                write(writes);
+            } catch (RuntimeException e) {
+                requeue(writes);
+                throw e;
+            }
+        } finally {
+            shard.flushLock.unlock();
+        }
+    }
+
+    // Sau khi đơn hàng đã commit (các dòng carts đã bị xóa trong DB): bỏ các dòng đã thanh toán khỏi bộ nhớ.
+    // Dòng bị sửa sau lúc flush vẫn còn thay đổi chờ ghi nên được giữ lại và sẽ được ghi lại xuống DB.
+    public void removeCheckedOut(UUID userId, Map<UUID, Integer> checkedOut) {
+        if (!enabled) {
+            return;
+        }
+        Shard shard = shard(userId);
+        shard.lock.lock();
+        try {
+            UserCart cart = shard.carts.get(userId);
+            if (cart == null) {
+                return;
+            }
+            Map<UUID, PendingWrite> pending = shard.dirty.getOrDefault(userId, Map.of());
+            checkedOut.forEach((productId, quantity) -> {
+                Line line = cart.lines.get(productId);
+                if (line != null && !pending.containsKey(productId) && line.quantity() == quantity) {
+                    cart.lines.remove(productId);
+                }
+            });
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    // Ghi từng shard có thay đổi trong một transaction; chỉ khóa ghi của shard đang được ghi
+    @Scheduled(fixedDelayString = "${app.cart.store.flush-interval-ms:500}")
+    public void flushAll() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        int written = 0;
+        for (Shard shard : shards) {
+            shard.flushLock.lock();
+            try {
+                List<PendingWrite> writes = new ArrayList<>();
+                shard.lock.lock();
+                try {
+                    if (shard.dirty.isEmpty()) {
+                        continue;
+                    }
+                    Map<UUID, Map<UUID, PendingWrite>> swapped = shard.dirty;
+                    shard.dirty = new HashMap<>();
+                    swapped.values().forEach(pending -> writes.addAll(pending.values()));
+                } finally {
+                    shard.lock.unlock();
+                }
+                try {
+                    write(writes);
+                    written += writes.size();
+                } catch (RuntimeException e) {
+                    requeue(writes);
+                    logger.atWarn().addKeyValue("writes", writes.size()).setCause(e)
+                            .log("Ghi giỏ hàng xuống DB thất bại, sẽ thử lại ở lượt sau");
+                    return;
+                }
+            } finally {
+                shard.flushLock.unlock();
+            }
+        }
+        if (written > 0) {
+            logger.atDebug()
+                    .addKeyValue("writes", written)
+                    .addKeyValue("elapsedMs", (System.nanoTime() - start) / 1_000_000)
+                    .log("Đã ghi giỏ hàng xuống DB");
+        }
+        evictIdle();
+    }
+
+    private void write(List<PendingWrite> writes) {
+        List<Object[]> upserts = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        for (PendingWrite write : writes) {
+            if (write.quantity() > 0) {
+                upserts.add(new Object[]{write.cartId(), write.quantity(), write.userId(), write.productId()});
+            } else {
+                deletes.add(new Object[]{write.userId(), write.productId()});
+            }
+        }
+        flushTransaction.executeWithoutResult(status -> {
+            cartWriteRepository.deleteLines(deletes);
+            cartWriteRepository.upsertLines(upserts);
+        });
+    }
+
+    // Trả thay đổi chưa ghi được về hàng chờ; thay đổi mới hơn phát sinh trong lúc ghi được giữ nguyên
+    private void requeue(List<PendingWrite> writes) {
+        for (PendingWrite write : writes) {
+            Shard shard = shard(write.userId());
+            shard.lock.lock();
+            try {
+                shard.dirty.computeIfAbsent(write.userId(), id -> new HashMap<>())
+                        .putIfAbsent(write.productId(), write);
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleEvictionMillis;
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                shard.carts.entrySet().removeIf(entry ->
+                        entry.getValue().lastAccess < cutoff && !shard.dirty.containsKey(entry.getKey()));
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    // Tải giỏ từ DB khi chưa có trong bộ nhớ; truy vấn chạy ngoài khóa để không chặn cả shard
+    private void ensureLoaded(Shard shard, UUID userId) {
+        shard.lock.lock();
+        try {
+            if (shard.carts.containsKey(userId)) {
+                return;
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+        List<CartLineDTO> rows = cartWriteRepository.findLines(userId);
+        shard.lock.lock();
+        try {
+            if (!shard.carts.containsKey(userId)) {
+                UserCart cart = new UserCart();
+                for (CartLineDTO row : rows) {
+                    cart.lines.put(row.getProductId(), new Line(row.getCartId(), row.getProductId(), row.getQuantity()));
+                }
+                cart.lastAccess = System.currentTimeMillis();
+                shard.carts.put(userId, cart);
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    private Shard shard(UUID userId) {
+        return shards[Math.floorMod(userId.hashCode(), shards.length)];
+    }
+
+    // Xem và sửa giỏ của một user; thay đổi được giữ riêng cho tới khi update() ghi nhận
+    public static final class CartEditor {
+
+        private final UserCart cart;
+        private final Map<UUID, Line> staged = new LinkedHashMap<>();
+
+        private CartEditor(UserCart cart) {
+            this.cart = cart;
+        }
+
+        public Line get(UUID productId) {
+            Line line = staged.containsKey(productId) ? staged.get(productId) : cart.lines.get(productId);
+            return line == null || line.quantity() <= 0 ? null : line;
+        }
+
+        public Line findByCartId(UUID cartId) {
+            for (Line line : lines()) {
+                if (line.cartId().equals(cartId)) {
+                    return line;
+                }
+            }
+            return null;
+        }
+
+        public List<Line> lines() {
+            List<Line> result = new ArrayList<>();
+            for (Line line : cart.lines.values()) {
+                Line current = get(line.productId());
+                if (current != null) {
+                    result.add(current);
+                }
+            }
+            for (Line line : staged.values()) {
+                if (!cart.lines.containsKey(line.productId()) && line.quantity() > 0) {
+                    result.add(line);
+                }
+            }
+            return result;
+        }
+
+        // Đặt số lượng tuyệt đối; 0 = xóa dòng
+        public Line set(UUID productId, int quantity) {
+            Line existing = get(productId);
+            UUID cartId = existing != null ? existing.cartId() : UUID.randomUUID();
+            Line line = new Line(cartId, productId, Math.max(0, quantity));
+            staged.put(productId, line);
+            return line;
+        }
+
+        private void commit(Shard shard, UUID userId) {
+            if (staged.isEmpty()) {
+                return;
+            }
+            Map<UUID, PendingWrite> pending = shard.dirty.computeIfAbsent(userId, id -> new HashMap<>());
+            for (Line line : staged.values()) {
+                if (line.quantity() > 0) {
+                    cart.lines.put(line.productId(), line);
+                } else {
+                    cart.lines.remove(line.productId());
+                }
+                pending.put(line.productId(), new PendingWrite(userId, line.productId(), line.cartId(), line.quantity()));
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.workflow.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.CacheControl;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Phiên bản của catalog (sản phẩm + danh mục), tăng sau mỗi lần ghi đã commit.
+// Phiên bản nằm ở một dòng của bảng catalog_version nên mọi node trả cùng ETag cho cùng dữ liệu;
+// mỗi node giữ bản sao trong bộ nhớ và đồng bộ định kỳ, nên kiểm tra If-None-Match không cần truy vấn DB.
+@Service
+public class CatalogVersionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogVersionService.class);
+
+    private static final String CREATE_TABLE_SQL =
+            "CREATE TABLE IF NOT EXISTS catalog_version ("
+                    + "id smallint PRIMARY KEY, version bigint NOT NULL, updated_at timestamp NOT NULL)";
+
+    private static final String INIT_ROW_SQL =
+            "INSERT INTO catalog_version (id, version, updated_at) VALUES (1, 0, now()) ON CONFLICT (id) DO NOTHING";
+
+    // Câu lệnh autocommit riêng, không nằm trong transaction ghi nên không khóa dòng này suốt lúc thanh toán
+    private static final String BUMP_SQL =
+            "UPDATE catalog_version SET version = version + 1, updated_at = now() WHERE id = 1 "
+                    + "RETURNING version, updated_at";
+
+    private static final String SELECT_SQL = "SELECT version, updated_at FROM catalog_version WHERE id = 1";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Thời gian CDN được giữ bản sao trước khi hỏi lại server
+    @Value("${app.catalog.cdn-max-age-seconds:30}")
+    private long cdnMaxAgeSeconds;
+
+    @Value("${app.catalog.stale-while-revalidate-seconds:60}")
+    private long staleWhileRevalidateSeconds;
+
+    // Ghi đã commit nhưng chưa tăng phiên bản trong DB; nhiều lần ghi trong một chu kỳ chỉ tăng một lần
+    private final AtomicBoolean bumpPending = new AtomicBoolean();
+
+    // Phiên bản và thời điểm đổi đọc từ DB; đổi cùng lúc nên giữ trong một đối tượng bất biến
+    private record Snapshot(long version, long lastModified) {
+    }
+
+    // Chưa đọc được DB (ví dụ lúc khởi động): dùng mốc khởi động để không trùng ETag của dữ liệu khác
+    private volatile Snapshot snapshot = new Snapshot(-System.currentTimeMillis(), System.currentTimeMillis());
+
+    @PostConstruct
+    void init() {
+        try {
+            jdbcTemplate.execute(CREATE_TABLE_SQL);
+            jdbcTemplate.execute(INIT_ROW_SQL);
+            sync();
+        } catch (DataAccessException e) {
+            logger.atWarn().setCause(e).log("Không khởi tạo được bảng catalog_version, sẽ thử lại khi đồng bộ");
+        }
+    }
+
+    // Gọi trong transaction ghi: phiên bản chỉ tăng sau khi commit để client không lưu nhầm dữ liệu cũ với ETag mới
+    public void markChanged() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bumpPending.set(true);
+                }
+            });
+        } else {
+            bumpPending.set(true);
+        }
+    }
+
+    // Tăng phiên bản nếu node này vừa ghi, nếu không thì đọc phiên bản do node khác ghi.
+    // ETag trên mọi node đổi chậm nhất một chu kỳ sau khi ghi commit.
+    @Scheduled(fixedDelayString = "${app.catalog.version-sync-interval-ms:500}")
+    public synchronized void sync() {
+        boolean bump = bumpPending.getAndSet(false);
+        try {
+            Snapshot latest = jdbcTemplate.queryForObject(bump ? BUMP_SQL : SELECT_SQL, (rs, rowNum) ->
+                    new Snapshot(rs.getLong("version"), toMillis(rs.getTimestamp("updated_at"))));
+            if (latest != null && latest.version() != snapshot.version()) {
+                snapshot = latest;
+            }
+        } catch (DataAccessException e) {
+            if (bump) {
+                bumpPending.set(true);
+            }
+            logger.atWarn().setCause(e).log("Không đồng bộ được phiên bản catalog");
+        }
+    }
+
+    public String getETag() {
+        return "\"c" + Long.toString(snapshot.version(), 36) + "\"";
+    }
+
+    public long getLastModified() {
+        return snapshot.lastModified();
+    }
+
+    // Trình duyệt luôn hỏi lại (max-age=0), CDN được giữ ngắn hạn
+    public CacheControl cacheControl() {
+        return CacheControl.maxAge(Duration.ZERO)
+                .sMaxAge(Duration.ofSeconds(cdnMaxAgeSeconds))
+                .staleWhileRevalidate(Duration.ofSeconds(staleWhileRevalidateSeconds))
+                .cachePublic();
+    }
+
+    private static long toMillis(Timestamp timestamp) {
+        return timestamp != null ? timestamp.getTime() : System.currentTimeMillis();
+    }
+}
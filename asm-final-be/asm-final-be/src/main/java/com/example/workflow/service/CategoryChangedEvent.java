@@ -0,0 +1,14 @@
+package com.example.workflow.service;
+
+import com.example.workflow.model.Category;
+import lombok.Getter;
+
+// Phát ra khi danh mục được sửa; sản phẩm thuộc danh mục cần được index lại theo tên mới
+@Getter
+public class CategoryChangedEvent {
+    private final Category category;
+
+    public CategoryChangedEvent(Category category) {
+        this.category = category;
+    }
+}
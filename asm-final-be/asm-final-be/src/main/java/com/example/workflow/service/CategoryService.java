@@ -3,6 +3,7 @@ package com.example.workflow.service;
 import com.example.workflow.model.Category;
 import com.example.workflow.repository.CategoryRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -15,19 +16,28 @@ public class CategoryService {
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private CatalogVersionService catalogVersionService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     // Thêm mới một loại sản phẩm
     @Transactional
     public Category createCategory(Category category) {
         if (category.getName() == null || category.getName().trim().isEmpty()) {
             throw new RuntimeException("Tên loại sản phẩm không được để trống");
         }
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        catalogVersionService.markChanged();
+        return saved;
     }
 
     // Cập nhật thông tin loại sản phẩm
     @Transactional
     public Category updateCategory(UUID categoryId, Category categoryDetails) {
-        Category category = categoryRepository.findById(categoryId)
+        // Không sửa trực tiếp đối tượng đang nằm trong cache
+        Category category = categoryRepository.findByIdForUpdate(categoryId)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy loại sản phẩm"));
 
         if (categoryDetails.getName() != null && !categoryDetails.getName().trim().isEmpty()) {
@@ -37,7 +47,10 @@ public class CategoryService {
             category.setDescription(categoryDetails.getDescription());
         }
 
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        catalogVersionService.markChanged();
+        eventPublisher.publishEvent(new CategoryChangedEvent(saved));
+        return saved;
     }
 
     // Xóa loại sản phẩm
@@ -46,6 +59,7 @@ public class CategoryService {
         Category category = categoryRepository.findById(categoryId)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy loại sản phẩm"));
         categoryRepository.delete(category);
+        catalogVersionService.markChanged();
     }
 
     // Lấy tất cả loại sản phẩm
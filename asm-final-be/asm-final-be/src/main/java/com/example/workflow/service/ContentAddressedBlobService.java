@@ -0,0 +1,125 @@
+package com.example.workflow.service;
+
+import com.example.workflow.model.BlobDeletion;
+import com.example.workflow.model.StoredBlob;
+import com.example.workflow.repository.BlobDeletionRepository;
+import com.example.workflow.repository.ProductRepository;
+import com.example.workflow.repository.StoredBlobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+// Lưu ảnh theo nội dung: tên object là SHA-256 của file, nên upload lại cùng một ảnh
+// (import lại catalog, nhiều sản phẩm chung ảnh) chỉ tốn một lần đọc file cục bộ, không upload lại.
+// File chỉ được xếp hàng xóa khi không còn sản phẩm nào trỏ tới URL đó.
+@Service
+public class ContentAddressedBlobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContentAddressedBlobService.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private BlobStorageService blobStorageService;
+
+    @Autowired
+    private StoredBlobRepository storedBlobRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private BlobDeletionRepository blobDeletionRepository;
+
+    public String upload(MultipartFile file, String folder) throws IOException {
+        // Lượt 1: băm file multipart (đã nằm trên đĩa/bộ nhớ của server), không gọi kho lưu trữ
+        String sha256 = sha256(file);
+
+        Optional<StoredBlob> existing = storedBlobRepository.findById(sha256);
+        if (existing.isPresent() && blobStorageService.objectName(existing.get().getUrl()) != null) {
+            logger.atDebug().addKeyValue("sha256", sha256).log("Ảnh đã tồn tại, bỏ qua upload");
+            return existing.get().getUrl();
+        }
+
+        // Lượt 2: upload dạng stream dưới tên suy ra từ nội dung
+        String url = blobStorageService.uploadFileAs(file, folder + "/" + sha256 + extension(file.getOriginalFilename()));
+
+        StoredBlob blob = new StoredBlob();
+        blob.setSha256(sha256);
+        blob.setUrl(url);
+        blob.setSize(file.getSize());
+        blob.setContentType(file.getContentType());
+        // Hai lượt upload cùng nội dung đồng thời sẽ ghi cùng một dòng với cùng giá trị: vô hại
+        storedBlobRepository.save(blob);
+        return url;
+    }
+
+    // Xếp hàng xóa ảnh (và các biến thể) nếu không còn sản phẩm nào dùng; gọi sau khi đã xóa/đổi ảnh sản phẩm.
+    // Chỉ ghi outbox trong transaction hiện tại, việc gọi kho lưu trữ do BlobDeletionWorker làm sau.
+    @Transactional
+    public void releaseIfUnused(String url, Collection<String> variantUrls) {
+        if (url == null || url.isEmpty() || productRepository.countByImageUrl(url) > 0) {
+            return;
+        }
+        List<BlobDeletion> deletions = new ArrayList<>();
+        deletions.add(deletion(url, url));
+        if (variantUrls != null) {
+            variantUrls.stream()
+                    .filter(variantUrl -> !variantUrl.equals(url))
+                    .forEach(variantUrl -> deletions.add(deletion(variantUrl, url)));
+        }
+        blobDeletionRepository.saveAll(deletions);
+        storedBlobRepository.findByUrl(url).ifPresent(storedBlobRepository::delete);
+    }
+
+    private static BlobDeletion deletion(String url, String sourceUrl) {
+        BlobDeletion deletion = new BlobDeletion();
+        deletion.setUrl(url);
+        deletion.setSourceUrl(sourceUrl);
+        return deletion;
+    }
+
+    private static String sha256(MultipartFile file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM không hỗ trợ SHA-256", e);
+        }
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (in.read(buffer) != -1) {
+                // Chỉ đọc để cập nhật digest
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // Giữ phần mở rộng để kho lưu trữ/trình duyệt đoán đúng loại file
+    private static String extension(String originalFilename) {
+        if (originalFilename == null) {
+            return "";
+        }
+        int dot = originalFilename.lastIndexOf('.');
+        if (dot < 0) {
+            return "";
+        }
+        String extension = originalFilename.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return extension.matches("[a-z0-9]{1,5}") ? "." + extension : "";
+    }
+}
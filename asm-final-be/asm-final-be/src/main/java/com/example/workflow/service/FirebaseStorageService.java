@@ -3,28 +3,46 @@ package com.example.workflow.service;
 import com.google.cloud.storage.*;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.cloud.StorageClient;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Base64;
 import java.util.Collections;
-import java.util.UUID;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
 
 @Service
-public class FirebaseStorageService {
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "firebase", matchIfMissing = true)
+public class FirebaseStorageService implements BlobStorageService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FirebaseStorageService.class);
 
     private final FirebaseApp firebaseApp;
 
-    public FirebaseStorageService(FirebaseApp firebaseApp) {
+    // Kích thước mỗi khối gửi lên phiên resumable (bội số của 256 KiB theo yêu cầu của GCS)
+    private final int uploadChunkSize;
+
+    public FirebaseStorageService(FirebaseApp firebaseApp,
+                                  @Value("${app.storage.upload-chunk-size:1048576}") int uploadChunkSize) {
         this.firebaseApp = firebaseApp;
+        this.uploadChunkSize = uploadChunkSize;
     }
 
-    public String uploadFile(MultipartFile file, String folder) throws IOException {
-        String fileName = UUID.randomUUID().toString() + "_" + file.getOriginalFilename();
+    // Upload dạng stream qua phiên resumable: đọc từng khối từ multipart, không giữ cả file trong heap.
+    // CRC32C được tính trong lúc đọc và so với checksum GCS trả về, không cần gọi lại storage.get.
+    @Override
+    public String uploadFileAs(MultipartFile file, String objectName) throws IOException {
         String bucketName = firebaseApp.getOptions().getStorageBucket();
         Storage storage = StorageClient.getInstance(firebaseApp).bucket(bucketName).getStorage();
-        BlobId blobId = BlobId.of(bucketName, folder + "/" + fileName);
+        BlobId blobId = BlobId.of(bucketName, objectName);
 
         // Thiết lập quyền truy cập công khai (PUBLIC_READ) khi upload
         BlobInfo blobInfo = BlobInfo.newBuilder(blobId)
@@ -32,31 +50,84 @@ public class FirebaseStorageService {
                 .setAcl(Collections.singletonList(Acl.of(Acl.User.ofAllUsers(), Acl.Role.READER)))
                 .build();
 
-        try {
-            // Upload file
-            Blob blob = storage.create(blobInfo, file.getBytes());
-
-            // Kiểm tra xem upload có thành công không
-            if (blob == null) {
-                throw new IOException("Upload file thất bại: " + fileName);
-            }
-
-            // Log sau khi upload thành công
-            String url = "https://storage.googleapis.com/" + bucketName + "/" + folder + "/" + fileName;
-
-            // Kiểm tra xem file có thực sự tồn tại không
-            Blob checkBlob = storage.get(blobId);
-            if (checkBlob != null && checkBlob.exists()) {
-                System.out.println("Xác nhận file tồn tại trên Firebase Storage: " + fileName);
-            } else {
-                System.out.println("File không tồn tại trên Firebase Storage sau khi upload: " + fileName);
-            }
-
-            return url;
+        CRC32C crc32c = new CRC32C();
+        Blob blob;
+        try (InputStream in = new CheckedInputStream(file.getInputStream(), crc32c)) {
+            blob = storage.createFrom(blobInfo, in, uploadChunkSize);
         } catch (Exception e) {
-            // Log nếu có lỗi
-            System.out.println("Lỗi khi upload file " + fileName + ": " + e.getMessage());
-            throw new IOException("Không thể upload file: " + e.getMessage());
+            logger.atError().addKeyValue("blob", blobId.getName()).setCause(e).log("Lỗi khi upload file");
+            throw new IOException("Không thể upload file: " + e.getMessage(), e);
+        }
+
+        String expected = encodeCrc32c(crc32c.getValue());
+        if (blob == null || !expected.equals(blob.getCrc32c())) {
+            logger.atError()
+                    .addKeyValue("blob", blobId.getName())
+                    .addKeyValue("expectedCrc32c", expected)
+                    .addKeyValue("actualCrc32c", blob == null ? null : blob.getCrc32c())
+                    .log("Checksum không khớp sau khi upload");
+            storage.delete(blobId);
+            throw new IOException("Upload file thất bại (checksum không khớp): " + objectName);
+        }
+        return publicUrl(objectName);
+    }
+
+    // GCS trả CRC32C dạng base64 của 4 byte big-endian
+    private static String encodeCrc32c(long value) {
+        byte[] bytes = ByteBuffer.allocate(4).putInt((int) value).array();
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    @Override
+    public String uploadBytes(String objectName, byte[] data, String contentType) throws IOException {
+        String bucketName = firebaseApp.getOptions().getStorageBucket();
+        Storage storage = StorageClient.getInstance(firebaseApp).bucket(bucketName).getStorage();
+        BlobInfo blobInfo = BlobInfo.newBuilder(BlobId.of(bucketName, objectName))
+                .setContentType(contentType)
+                .setCacheControl("public, max-age=31536000")
+                .setAcl(Collections.singletonList(Acl.of(Acl.User.ofAllUsers(), Acl.Role.READER)))
+                .build();
+        try {
+            storage.create(blobInfo, data);
+        } catch (StorageException e) {
+            throw new IOException("Không thể upload file: " + e.getMessage(), e);
         }
+        return publicUrl(objectName);
+    }
+
+    @Override
+    public InputStream openFile(String url) throws IOException {
+        String objectName = objectName(url);
+        if (objectName == null) {
+            throw new IOException("URL không thuộc Firebase Storage: " + url);
+        }
+        String bucketName = firebaseApp.getOptions().getStorageBucket();
+        Storage storage = StorageClient.getInstance(firebaseApp).bucket(bucketName).getStorage();
+        return Channels.newInputStream(storage.reader(BlobId.of(bucketName, objectName)));
+    }
+
+    @Override
+    public String objectName(String url) {
+        String bucketPrefix = publicUrl("");
+        if (url == null || !url.startsWith(bucketPrefix)) {
+            return null;
+        }
+        return url.substring(bucketPrefix.length());
+    }
+
+    @Override
+    public String publicUrl(String objectName) {
+        return "https://storage.googleapis.com/" + firebaseApp.getOptions().getStorageBucket() + "/" + objectName;
+    }
+
+    @Override
+    public void deleteFile(String url) {
+        String objectName = objectName(url);
+        if (objectName == null) {
+            return;
+        }
+        String bucketName = firebaseApp.getOptions().getStorageBucket();
+        Storage storage = StorageClient.getInstance(firebaseApp).bucket(bucketName).getStorage();
+        storage.delete(bucketName, objectName);
     }
 }
@@ -0,0 +1,191 @@
+package com.example.workflow.service;
+
+import com.example.workflow.dto.GuestCartDTO;
+import com.example.workflow.dto.request.CartBatchRequest;
+import com.example.workflow.model.Product;
+import com.example.workflow.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Giỏ hàng của khách chưa đăng nhập, không lưu gì ở server: các dòng (sản phẩm, số lượng) được mã hóa
+// nhị phân và ký HMAC thành token "payload.chữ-ký" (base64url), client giữ token và gửi lại ở mỗi request.
+// Giá và tồn kho luôn lấy từ cache sản phẩm lúc đọc nên token không mang dữ liệu có thể bị sửa giá.
+// Khi đăng nhập, giỏ khách được gộp vào giỏ của user (CartService.mergeGuestCart).
+@Service
+public class GuestCartService {
+
+    // Khóa ký dẫn xuất riêng cho giỏ khách từ secret của JwtService
+    private static final String SIGNING_PURPOSE = "guest-cart";
+
+    private static final byte TOKEN_VERSION = 1;
+
+    // HMAC-SHA256 cắt còn 128 bit: đủ chống giả mạo mà token ngắn hơn một nửa
+    private static final int MAC_BYTES = 16;
+
+    // Mỗi dòng: UUID sản phẩm (16 byte) + số lượng (2 byte)
+    private static final int LINE_BYTES = 18;
+    private static final int HEADER_BYTES = 1 + 8 + 1;
+    private static final int MAX_QUANTITY = 0xFFFF;
+    private static final int MAX_LINES_IN_TOKEN = 0xFF;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Value("${app.cart.guest.max-lines:50}")
+    private int maxLines;
+
+    @Value("${app.cart.guest.ttl-days:30}")
+    private long ttlDays;
+
+    public GuestCartDTO view(String token) {
+        return price(decode(token));
+    }
+
+    // Áp dụng thay đổi lên giỏ khách và trả về token mới; lỗi ở một dòng thì giỏ không đổi
+    public GuestCartDTO applyBatch(String token, CartBatchRequest request) {
+        List<CartBatchRequest.Item> items = request.getItems();
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("Danh sách thay đổi giỏ hàng không được để trống");
+        }
+        Map<UUID, Integer> lines = decode(token);
+        Map<UUID, Integer> changed = new LinkedHashMap<>();
+        for (CartBatchRequest.Item item : items) {
+            if (item.getProductId() == null) {
+                throw new IllegalArgumentException("ID sản phẩm là bắt buộc");
+            }
+            if (changed.containsKey(item.getProductId())) {
+                throw new IllegalArgumentException("Sản phẩm bị lặp trong request: " + item.getProductId());
+            }
+            if ((item.getQuantity() == null) == (item.getDelta() == null)) {
+                throw new IllegalArgumentException("Mỗi dòng cần đúng một trong hai trường quantity hoặc delta");
+            }
+            if (item.getQuantity() != null && item.getQuantity() < 0) {
+                throw new IllegalArgumentException("Số lượng không được âm");
+            }
+            int current = lines.getOrDefault(item.getProductId(), 0);
+            int newQuantity = item.getQuantity() != null
+                    ? item.getQuantity()
+                    : Math.max(0, current + item.getDelta());
+            if (newQuantity > current) {
+                Product product = productRepository.findById(item.getProductId())
+                        .orElseThrow(() -> new RuntimeException("Product not found"));
+                if (product.getStock() < newQuantity) {
+                    throw new RuntimeException("Insufficient stock");
+                }
+            }
+            changed.put(item.getProductId(), newQuantity);
+        }
+        changed.forEach((productId, quantity) -> {
+            if (quantity > 0) {
+                lines.put(productId, quantity);
+            } else {
+                lines.remove(productId);
+            }
+        });
+        int limit = Math.min(maxLines, MAX_LINES_IN_TOKEN);
+        if (lines.size() > limit) {
+            throw new IllegalArgumentException("Giỏ hàng tối đa " + limit + " sản phẩm");
+        }
+        return price(lines);
+    }
+
+    // productId -> số lượng, theo thứ tự thêm vào; token rỗng hoặc đã hết hạn được coi là giỏ rỗng
+    public Map<UUID, Integer> decode(String token) {
+        Map<UUID, Integer> lines = new LinkedHashMap<>();
+        if (token == null || token.isBlank()) {
+            return lines;
+        }
+        int dot = token.indexOf('.');
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = Base64.getUrlDecoder().decode(token.substring(0, Math.max(dot, 0)));
+            signature = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Giỏ hàng khách không hợp lệ");
+        }
+        if (dot <= 0 || !MessageDigest.isEqual(signature, mac(payload))) {
+            throw new IllegalArgumentException("Giỏ hàng khách không hợp lệ");
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            if (buffer.get() != TOKEN_VERSION) {
+                return lines;
+            }
+            long expiresAtSeconds = buffer.getLong();
+            if (expiresAtSeconds < System.currentTimeMillis() / 1000) {
+                return lines;
+            }
+            int count = Byte.toUnsignedInt(buffer.get());
+            for (int i = 0; i < count; i++) {
+                UUID productId = new UUID(buffer.getLong(), buffer.getLong());
+                lines.put(productId, Short.toUnsignedInt(buffer.getShort()));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Giỏ hàng khách không hợp lệ");
+        }
+        return lines;
+    }
+
+    String encode(Map<UUID, Integer> lines) {
+        if (lines.isEmpty()) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + lines.size() * LINE_BYTES);
+        buffer.put(TOKEN_VERSION);
+        buffer.putLong(System.currentTimeMillis() / 1000 + TimeUnit.DAYS.toSeconds(ttlDays));
+        buffer.put((byte) lines.size());
+        lines.forEach((productId, quantity) -> {
+            if (quantity > MAX_QUANTITY) {
+                throw new IllegalArgumentException("Số lượng vượt quá giới hạn");
+            }
+            buffer.putLong(productId.getMostSignificantBits());
+            buffer.putLong(productId.getLeastSignificantBits());
+            buffer.putShort((short) (int) quantity);
+        });
+        byte[] payload = buffer.array();
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(payload) + "." + encoder.encodeToString(mac(payload));
+    }
+
+    // Tính giá theo dữ liệu hiện tại; sản phẩm đã bị xóa được bỏ khỏi giỏ và khỏi token mới
+    private GuestCartDTO price(Map<UUID, Integer> lines) {
+        List<GuestCartDTO.Item> items = new ArrayList<>(lines.size());
+        Map<UUID, Integer> kept = new LinkedHashMap<>();
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry<UUID, Integer> line : lines.entrySet()) {
+            Product product = productRepository.findById(line.getKey()).orElse(null);
+            if (product == null) {
+                continue;
+            }
+            int quantity = line.getValue();
+            BigDecimal subtotal = product.getPrice().multiply(BigDecimal.valueOf(quantity));
+            items.add(new GuestCartDTO.Item(product.getId(), product.getName(), product.getImageUrl(),
+                    product.getPrice(), quantity, product.getStock(), subtotal));
+            kept.put(product.getId(), quantity);
+            total = total.add(subtotal);
+        }
+        return new GuestCartDTO(encode(kept), items, total);
+    }
+
+    private byte[] mac(byte[] payload) {
+        return Arrays.copyOf(jwtService.sign(SIGNING_PURPOSE, payload), MAC_BYTES);
+    }
+}
@@ -1,26 +1,80 @@
 package com.example.workflow.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
-import java.security.Key;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import com.example.workflow.model.User;
 
 @Service
 public class JwtService {
+    // Thời hạn của token đăng nhập: 7 ngày
+    public static final long TOKEN_VALIDITY_MILLIS = 1000L * 60 * 60 * 24 * 7;
+
     // Inject giá trị secret từ application.yml
     @Value("${app.security.secret}")
     private String SECRET;
 
+    // Số token đã xác thực tối đa được giữ trong cache
+    @Value("${app.security.token-cache.maximum-size:100000}")
+    private long tokenCacheMaximumSize;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    // Khóa ký và parser được dựng một lần khi khởi động thay vì ở mỗi request
+    private SecretKey signKey;
+    private JwtParser jwtParser;
+
+    // Cache: digest của token -> claims đã xác thực, hết hạn đúng lúc token hết hạn
+    private Cache<String, Claims> verifiedTokens;
+
+    // Khóa con theo mục đích (ví dụ giỏ hàng khách), dẫn xuất từ khóa ký JWT
+    private final Map<String, SecretKeySpec> derivedKeys = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        this.signKey = Keys.hmacShaKeyFor(hexStringToByteArray(SECRET));
+        this.jwtParser = Jwts.parser()
+                .setSigningKey(signKey)
+                .build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(tokenCacheMaximumSize)
+                .expireAfter(new TokenExpiry())
+                .recordStats()
+                .build();
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "jwtVerifiedTokens");
+        }
+    }
+
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
     }
@@ -30,28 +84,63 @@ public class JwtService {
     }
 
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
+        final Claims claims = parseToken(token);
         return claimsResolver.apply(claims);
     }
 
+    // Parse và xác thực token một lần; các lần sau chỉ tốn một lần tra cache
+    public Claims parseToken(String token) {
+        String digest = digest(token);
+        Claims cached = verifiedTokens.getIfPresent(digest);
+        if (cached != null) {
+            // Cache có thể giữ entry tới nhịp dọn dẹp kế tiếp, nên vẫn kiểm tra hạn ở đây
+            if (!isExpired(cached)) {
+                return cached;
+            }
+            verifiedTokens.invalidate(digest);
+        }
+        Claims claims = extractAllClaims(token);
+        verifiedTokens.put(digest, claims);
+        return claims;
+    }
+
+    // Token sai chữ ký/hết hạn là chuyện thường gặp; nơi gọi (JwtAuthFilter) tự ghi log có lấy mẫu
     private Claims extractAllClaims(String token) {
+        return jwtParser
+                .parseClaimsJws(token)
+                .getBody();
+    }
+
+    // HMAC-SHA256 của dữ liệu với khóa con dẫn xuất từ secret theo purpose:
+    // token khác loại (giỏ hàng khách, ...) không bao giờ dùng lẫn chữ ký với JWT đăng nhập
+    public byte[] sign(String purpose, byte[] data) {
         try {
-            return Jwts
-                    .parser()
-                    .setSigningKey(getSignKey())
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
-        } catch (Exception e) {
-            System.err.println("Lỗi khi parse token: " + e.getMessage());
-            e.printStackTrace();
-            throw e;
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(derivedKeys.computeIfAbsent(purpose, this::deriveKey));
+            return mac.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 không khả dụng", e);
         }
     }
 
-    private Key getSignKey() {
-        byte[] keyBytes = hexStringToByteArray(SECRET);
-        return Keys.hmacShaKeyFor(keyBytes);
+    private SecretKeySpec deriveKey(String purpose) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(signKey);
+            return new SecretKeySpec(mac.doFinal(purpose.getBytes(StandardCharsets.UTF_8)), "HmacSHA256");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 không khả dụng", e);
+        }
+    }
+
+    private String digest(String token) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            byte[] hash = sha256.digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 không khả dụng", e);
+        }
     }
 
     private byte[] hexStringToByteArray(String hex) {
@@ -68,13 +157,19 @@ public class JwtService {
         return extractClaim(token, Claims::getExpiration);
     }
 
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    private static boolean isExpired(Claims claims) {
+        Date expiration = claims.getExpiration();
+        return expiration != null && expiration.before(new Date());
     }
 
     public Boolean validateToken(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        return validateClaims(parseToken(token), userDetails);
+    }
+
+    // Kiểm tra claims đã parse sẵn, không parse lại token
+    public Boolean validateClaims(Claims claims, UserDetails userDetails) {
+        final String username = claims.getSubject();
+        return (username != null && username.equals(userDetails.getUsername()) && !isExpired(claims));
     }
 
     public String generateToken(UserDetails userDetails, User user) {
@@ -92,8 +187,8 @@ public class JwtService {
                 .setClaims(claims)
                 .setSubject(subject)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + 1000 * 60 * 60 * 24 * 7))
-                .signWith(getSignKey(), SignatureAlgorithm.HS256)
+                .setExpiration(new Date(System.currentTimeMillis() + TOKEN_VALIDITY_MILLIS))
+                .signWith(signKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
@@ -102,4 +197,29 @@ public class JwtService {
         claims.put("email", email);
         return createToken(claims, userId);
     }
-}
\ No newline at end of file
+
+    // Entry trong cache sống đến đúng thời điểm token hết hạn (tối đa TOKEN_VALIDITY_MILLIS)
+    private static class TokenExpiry implements Expiry<String, Claims> {
+        private static final long MAX_TTL_NANOS = TimeUnit.MILLISECONDS.toNanos(TOKEN_VALIDITY_MILLIS);
+
+        @Override
+        public long expireAfterCreate(String key, Claims claims, long currentTime) {
+            Date expiration = claims.getExpiration();
+            if (expiration == null) {
+                return MAX_TTL_NANOS;
+            }
+            long remainingMillis = expiration.getTime() - System.currentTimeMillis();
+            return Math.max(0, Math.min(TimeUnit.MILLISECONDS.toNanos(remainingMillis), MAX_TTL_NANOS));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, claims, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.workflow.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+// Lưu file trên ổ đĩa của node (hoặc thư mục mount chung), phục vụ qua GET /api/blobs/**.
+// Tên file là UUID hoặc hash nội dung nên nội dung của một URL không bao giờ đổi -> cache lâu dài được.
+@Service
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "local")
+public class LocalBlobStorageService implements BlobStorageService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalBlobStorageService.class);
+
+    private final Path rootDir;
+    private final String publicBaseUrl;
+
+    public LocalBlobStorageService(@Value("${app.storage.local.root-dir:${java.io.tmpdir}/blobs}") String rootDir,
+                                   @Value("${app.storage.local.public-base-url:http://localhost:8080/api/blobs}") String publicBaseUrl) throws IOException {
+        this.rootDir = Paths.get(rootDir).toAbsolutePath().normalize();
+        this.publicBaseUrl = publicBaseUrl.endsWith("/") ? publicBaseUrl.substring(0, publicBaseUrl.length() - 1) : publicBaseUrl;
+        Files.createDirectories(this.rootDir);
+    }
+
+    @Override
+    public String uploadFile(MultipartFile file, String folder) throws IOException {
+        return uploadFileAs(file, folder + "/" + UUID.randomUUID() + "_" + sanitize(file.getOriginalFilename()));
+    }
+
+    @Override
+    public String uploadFileAs(MultipartFile file, String key) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+
+        // Ghi ra file tạm rồi đổi tên: người đọc không bao giờ thấy file ghi dở
+        Path temp = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+        try (InputStream in = file.getInputStream()) {
+            Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            logger.atError().addKeyValue("blob", key).setCause(e).log("Lỗi khi lưu file");
+            throw new IOException("Không thể upload file: " + e.getMessage(), e);
+        }
+        return publicUrl(key);
+    }
+
+    @Override
+    public String uploadBytes(String objectName, byte[] data, String contentType) throws IOException {
+        Path target = resolve(objectName);
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+        try {
+            Files.write(temp, data);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return publicUrl(objectName);
+    }
+
+    @Override
+    public InputStream openFile(String url) throws IOException {
+        String objectName = objectName(url);
+        if (objectName == null) {
+            throw new IOException("URL không thuộc kho lưu trữ local: " + url);
+        }
+        return Files.newInputStream(resolve(objectName));
+    }
+
+    @Override
+    public String objectName(String url) {
+        String prefix = publicBaseUrl + "/";
+        if (url == null || !url.startsWith(prefix)) {
+            return null;
+        }
+        return url.substring(prefix.length());
+    }
+
+    @Override
+    public String publicUrl(String objectName) {
+        return publicBaseUrl + "/" + objectName;
+    }
+
+    @Override
+    public void deleteFile(String url) {
+        String objectName = objectName(url);
+        if (objectName == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(resolve(objectName));
+        } catch (IllegalArgumentException e) {
+            logger.atWarn().addKeyValue("url", url).setCause(e).log("Bỏ qua URL không hợp lệ");
+        } catch (IOException e) {
+            // Ném lại để BlobDeletionWorker thử lại sau
+            throw new UncheckedIOException("Không xóa được file: " + url, e);
+        }
+    }
+
+    // Đường dẫn thật của key, chặn key thoát ra ngoài thư mục gốc (../)
+    public Path resolve(String key) {
+        Path path = rootDir.resolve(key).normalize();
+        if (!path.startsWith(rootDir) || path.equals(rootDir)) {
+            throw new IllegalArgumentException("Đường dẫn file không hợp lệ: " + key);
+        }
+        return path;
+    }
+
+    private static String sanitize(String originalFilename) {
+        if (originalFilename == null || originalFilename.isBlank()) {
+            return "file";
+        }
+        String name = originalFilename.substring(Math.max(originalFilename.lastIndexOf('/'), originalFilename.lastIndexOf('\\')) + 1);
+        return name.isEmpty() ? "file" : name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
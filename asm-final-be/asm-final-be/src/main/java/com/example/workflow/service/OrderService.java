@@ -5,6 +5,10 @@ import com.example.workflow.dto.OrderReportDTO;
 import com.example.workflow.model.*;
 import com.example.workflow.repository.*;
 import com.example.workflow.utils.Constants;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import net.sf.jasperreports.engine.*;
 import net.sf.jasperreports.engine.export.ooxml.JRXlsxExporter;
@@ -14,9 +18,14 @@ import org.camunda.bpm.engine.RuntimeService;
 import org.camunda.bpm.engine.TaskService;
 import org.camunda.bpm.engine.runtime.ProcessInstance;
 import org.camunda.bpm.engine.task.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.sql.DataSource;
 import java.io.ByteArrayOutputStream;
@@ -29,19 +38,36 @@ import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @RequiredArgsConstructor
 public class OrderService {
 
+    private static final Logger logger = LoggerFactory.getLogger(OrderService.class);
+
     private final OrderRepository orderRepository;
-    private final OrderItemRepository orderItemRepository;
-    private final CartRepository cartRepository;
-    private final ProductRepository productRepository;
-    private final UserRepository userRepository;
+    private final CartStore cartStore;
+    private final StockReservationService stockReservationService;
+    private final ProductBulkWriteService productBulkWriteService;
     private final RuntimeService runtimeService;
     private final TaskService taskService;
     private final DataSource dataSource;
+    private final CheckoutRepository checkoutRepository;
+    private final ProcessStartDispatcher processStartDispatcher;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    // Theo dõi thời gian của đường thanh toán (p50/p99)
+    private Timer checkoutTimer;
+
+    @PostConstruct
+    void initMetrics() {
+        MeterRegistry registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+        checkoutTimer = Timer.builder("checkout.duration")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+    }
 
     public List<Order> getAllOrders() {
         return orderRepository.findAll();
@@ -59,70 +85,107 @@ public class OrderService {
         orderRepository.deleteById(id);
     }
 
-    @Transactional
+    // Thanh toán: số câu lệnh cố định, không phụ thuộc số dòng trong giỏ
+    // (lấy và xóa giỏ, trừ kho theo lô, đọc tồn kho mới, INSERT đơn hàng, lô INSERT order_items).
+    // Không chạy trong transaction: giỏ trong bộ nhớ được ghi xuống DB trước, trong transaction riêng,
+    // để một lượt thanh toán không giữ hai kết nối của pool cùng lúc.
     public Order createOrderFromCart(UUID userId) {
-        // Kiểm tra user tồn tại
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found with ID: " + userId));
+        long start = System.nanoTime();
+
+        // Giỏ hàng trong bộ nhớ có thể chưa ghi xuống DB: ghi ngay để đơn hàng khớp với giỏ user đang thấy
+        cartStore.flush(userId);
+
+        Order order = transactionTemplate.execute(status -> placeOrder(userId));
+        checkoutTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return order;
+    }
 
-        // Lấy danh sách sản phẩm trong giỏ hàng
-        List<Cart> cartItems = cartRepository.findByUserId(userId);
-        if (cartItems.isEmpty()) {
+    private Order placeOrder(UUID userId) {
+        // Lấy giỏ hàng kèm giá hiện tại và xóa giỏ trong cùng một câu lệnh
+        List<CheckoutRepository.CartLine> cartLines = checkoutRepository.claimCart(userId);
+        if (cartLines.isEmpty()) {
             throw new RuntimeException("Cart is empty");
         }
 
         // Tạo đơn hàng mới
+        UUID orderId = UUID.randomUUID();
         Order order = new Order();
+        order.setId(orderId);
+        User user = new User();
+        user.setId(userId);
         order.setUser(user);
         order.setStatus(Order.OrderStatus.PENDING);
 
         BigDecimal totalAmount = BigDecimal.ZERO;
-        List<OrderItem> orderItems = new ArrayList<>();
+        List<OrderItem> orderItems = new ArrayList<>(cartLines.size());
+        List<CheckoutRepository.ItemRow> itemRows = new ArrayList<>(cartLines.size());
+        Map<UUID, Integer> checkedOut = new HashMap<>();
 
         // Xử lý từng mục trong giỏ hàng để tạo OrderItem
-        for (Cart cartItem : cartItems) {
-            Product product = cartItem.getProduct();
-
-            // Tạo OrderItem
+        for (CheckoutRepository.CartLine line : cartLines) {
+            BigDecimal subtotal = line.price().multiply(BigDecimal.valueOf(line.quantity()));
+            CheckoutRepository.ItemRow row = new CheckoutRepository.ItemRow(
+                    UUID.randomUUID(), line.productId(), line.quantity(), line.price(), subtotal);
+            itemRows.add(row);
+
+            Product product = new Product();
+            product.setId(line.productId());
+            product.setName(line.name());
+            product.setPrice(line.price());
+            product.setImageUrl(line.imageUrl());
             OrderItem orderItem = new OrderItem();
+            orderItem.setId(row.id());
             orderItem.setOrder(order);
             orderItem.setProduct(product);
-            orderItem.setQuantity(cartItem.getQuantity());
-            orderItem.setPrice(product.getPrice());
-            orderItem.setSubtotal(product.getPrice().multiply(BigDecimal.valueOf(cartItem.getQuantity())));
-
+            orderItem.setQuantity(line.quantity());
+            orderItem.setPrice(line.price());
+            orderItem.setSubtotal(subtotal);
             orderItems.add(orderItem);
-            totalAmount = totalAmount.add(orderItem.getSubtotal());
+
+            checkedOut.put(line.productId(), line.quantity());
+            totalAmount = totalAmount.add(subtotal);
         }
 
         order.setItems(orderItems);
         order.setTotalAmount(totalAmount);
 
-        // Lưu order trước để có ID
-        Order savedOrder = orderRepository.save(order);
-
-        // Lưu từng OrderItem
-        for (OrderItem orderItem : orderItems) {
-            orderItem.setOrder(savedOrder); // Gán lại tham chiếu đến savedOrder
-            orderItemRepository.save(orderItem);
+        // Trừ kho ngay lúc thanh toán (giữ chỗ từ lúc thêm vào giỏ chuyển thành trừ kho thật);
+        // không đủ hàng thì cả đơn hàng bị rollback thay vì bị hủy ở bước kiểm tra tồn kho của quy trình
+        List<Product> decremented = productBulkWriteService.decrementStock(checkedOut);
+        for (Product product : decremented) {
+            try {
+                stockReservationService.ensureOthersCovered(userId, product.getId(), product.getStock());
+            } catch (RuntimeException e) {
+                throw new RuntimeException("Insufficient stock for product: " + product.getName(), e);
+            }
         }
 
-        // Đẩy vào Camunda
+        // Lưu đơn hàng và toàn bộ OrderItem
+        checkoutRepository.insertOrder(orderId, userId, totalAmount, order.getStatus(), order.getCreatedAt());
+        checkoutRepository.insertItems(orderId, itemRows);
+
+        // Ghi yêu cầu khởi tạo quy trình Camunda vào outbox cùng transaction; ProcessStartDispatcher khởi tạo sau khi commit
         Map<String, Object> variables = new HashMap<>();
-        variables.put("orderId", savedOrder.getId().toString());
-        variables.put("userId", user.getId().toString());
+        variables.put("orderId", orderId.toString());
+        variables.put("stockReserved", true);
+        variables.put("userId", userId.toString());
         variables.put("totalAmount", totalAmount.toString());
 
-        runtimeService.startProcessInstanceByKey(
-                "orderProcess",                  // Tên quy trình trong Camunda
-                savedOrder.getId().toString(),   // Business key
+        processStartDispatcher.enqueue(
+                Constants.ORDER_PROCESS,         // Tên quy trình trong Camunda
+                orderId.toString(),              // Business key
                 variables                        // Biến truyền vào
         );
 
-        // Xóa giỏ hàng sau khi tạo đơn hàng thành công
-        cartRepository.deleteAll(cartItems);
-
-        return savedOrder;
+        // Bỏ các dòng đã thanh toán khỏi giỏ trong bộ nhớ và gỡ giữ chỗ tương ứng khi đơn hàng đã commit
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cartStore.removeCheckedOut(userId, checkedOut);
+                stockReservationService.releaseCheckedOut(userId, checkedOut);
+            }
+        });
+        return order;
     }
 
     // Người dùng huỷ hàng
@@ -154,8 +217,10 @@ public class OrderService {
                         .singleResult();
                 if (task == null) {
                     // Log thông tin để kiểm tra
-                    System.out.println("Không tìm thấy task với business key: " + order.getId().toString() +
-                            " và task definition key: " + Constants.USER_TASK_CANCEL_ORDER);
+                    logger.atWarn()
+                            .addKeyValue("orderId", order.getId())
+                            .addKeyValue("taskDefinitionKey", Constants.USER_TASK_CANCEL_ORDER)
+                            .log("Không tìm thấy task để hủy đơn");
                     return ResponseEntity.badRequest().body("Task not found for order cancellation");
                 }
                 taskId = task.getId();
@@ -170,11 +235,18 @@ public class OrderService {
             // 4. Hoàn thành task, Camunda sẽ rẽ nhánh theo điều kiện (ví dụ: ${orderCanceled == false})
             taskService.complete(taskId, variables);
 
+            // 5. Khách hủy: trả lại tồn kho đã trừ lúc thanh toán
+            productBulkWriteService.restoreOrderStock(orderUUID);
+
             return ResponseEntity.ok("Order canceled successfully.");
         } catch (IllegalArgumentException ex) {
             return ResponseEntity.badRequest().body("Invalid orderId format");
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.atError()
+                    .addKeyValue("orderId", orderId)
+                    .addKeyValue("taskId", taskId)
+                    .setCause(e)
+                    .log("Lỗi khi hủy đơn hàng");
             return ResponseEntity.status(500).body("Internal Server Error: " + e.getMessage());
         }
     }
@@ -208,8 +280,10 @@ public class OrderService {
                         .singleResult();
                 if (task == null) {
                     // Log để kiểm tra
-                    System.out.println("Không tìm thấy task với business key: " + order.getId().toString() +
-                            " và task definition key: " + Constants.USER_TASK_DELETE_ORDER);
+                    logger.atWarn()
+                            .addKeyValue("orderId", order.getId())
+                            .addKeyValue("taskDefinitionKey", Constants.USER_TASK_DELETE_ORDER)
+                            .log("Không tìm thấy task để xóa đơn");
                     return ResponseEntity.badRequest().body("Task not found for order deletion");
                 }
                 taskId = task.getId();
@@ -224,11 +298,18 @@ public class OrderService {
             // 4. Hoàn thành task, Camunda sẽ tiến hành end-task (rẽ nhánh theo biến deleted)
             taskService.complete(taskId, variables);
 
+            // 5. Đơn bị xóa không được giao; đã trả kho lúc hủy thì lần này không làm gì
+            productBulkWriteService.restoreOrderStock(orderUUID);
+
             return ResponseEntity.ok("Order deleted successfully.");
         } catch (IllegalArgumentException ex) {
             return ResponseEntity.badRequest().body("Invalid orderId format");
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.atError()
+                    .addKeyValue("orderId", orderId)
+                    .addKeyValue("taskId", taskId)
+                    .setCause(e)
+                    .log("Lỗi khi xóa đơn hàng");
             return ResponseEntity.status(500).body("Internal Server Error: " + e.getMessage());
         }
     }
@@ -269,7 +350,11 @@ public class OrderService {
         } catch (IllegalArgumentException ex) {
             return ResponseEntity.badRequest().body(Map.of("error", "Invalid orderId format"));
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.atError()
+                    .addKeyValue("orderId", orderId)
+                    .addKeyValue("taskId", taskId)
+                    .setCause(e)
+                    .log("Lỗi khi duyệt đơn hàng");
             return ResponseEntity.status(500).body(Map.of("error", "Internal Server Error: " + e.getMessage()));
         }
     }
@@ -321,7 +406,10 @@ public class OrderService {
 
             return ResponseEntity.ok("✅ Đơn hàng đã xác nhận còn hàng và chuyển sang kiểm tra thanh toán!");
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.atError()
+                    .addKeyValue("orderId", orderId)
+                    .setCause(e)
+                    .log("Lỗi khi xác nhận còn hàng");
             return ResponseEntity.status(500).body("❌ Internal Server Error: " + e.getMessage());
         }
     }
@@ -357,7 +445,10 @@ public class OrderService {
 
             if (task == null) {
                 // Log thông tin để debug nếu cần
-                System.out.println("Không tìm thấy task 'Hết hàng' cho đơn hàng: " + orderId);
+                logger.atWarn()
+                        .addKeyValue("orderId", orderId)
+                        .addKeyValue("taskDefinitionKey", Constants.USER_TASK_REJECT_ORDER)
+                        .log("Không tìm thấy task 'Hết hàng'");
                 return ResponseEntity.badRequest().body("❌ Không tìm thấy User Task 'Hết hàng' cho đơn hàng: " + orderId);
             }
 
@@ -366,12 +457,18 @@ public class OrderService {
             variables.put("isInStock", false); // Xác nhận hết hàng
             taskService.complete(task.getId(), variables);
 
+            // Trả lại phần tồn kho đã trừ lúc thanh toán
+            productBulkWriteService.restoreOrderStock(orderUUID);
+
             return ResponseEntity.ok(Map.of(
                     "message", "🚨 Đơn hàng đã bị hủy do hết hàng!",
                     "orderId", orderId
             ));
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.atError()
+                    .addKeyValue("orderId", orderId)
+                    .setCause(e)
+                    .log("Lỗi khi xác nhận hết hàng");
             return ResponseEntity.status(500).body("❌ Internal Server Error: " + e.getMessage());
         }
     }
@@ -415,7 +512,10 @@ public class OrderService {
                     "orderId", orderId
             ));
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.atError()
+                    .addKeyValue("orderId", orderId)
+                    .setCause(e)
+                    .log("Lỗi khi xác nhận thanh toán thành công");
             return ResponseEntity.status(500).body("❌ Internal Server Error: " + e.getMessage());
         }
     }
@@ -454,12 +554,18 @@ public class OrderService {
             // Hoàn thành Task => Camunda sẽ tự động kết thúc quy trình
             taskService.complete(task.getId());
 
+            // Thanh toán thất bại: trả lại tồn kho (đã trả ở bước xử lý thanh toán thì không làm gì)
+            productBulkWriteService.restoreOrderStock(orderUUID);
+
             return ResponseEntity.ok(Map.of(
                     "message", "❌ Thanh toán thất bại, đơn hàng đã bị hủy!",
                     "orderId", orderId
             ));
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.atError()
+                    .addKeyValue("orderId", orderId)
+                    .setCause(e)
+                    .log("Lỗi khi xác nhận thanh toán thất bại");
             return ResponseEntity.status(500).body("❌ Internal Server Error: " + e.getMessage());
         }
     }
@@ -529,7 +635,12 @@ public class OrderService {
             }
 
             // Log tham số
-            System.out.println("Export Parameters: FROM_DATE_PARAM=" + fromDate + ", TO_DATE_PARAM=" + toDate + ", STATUS_PARAM=" + status);
+            logger.atInfo()
+                    .addKeyValue("format", format)
+                    .addKeyValue("fromDate", fromDate)
+                    .addKeyValue("toDate", toDate)
+                    .addKeyValue("status", status)
+                    .log("Xuất báo cáo đơn hàng");
 
             // Compile báo cáo
             JasperReport jasperReport = JasperCompileManager.compileReport(jrxmlInputStream);
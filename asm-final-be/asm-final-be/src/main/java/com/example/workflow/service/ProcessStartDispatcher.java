@@ -0,0 +1,264 @@
+package com.example.workflow.service;
+
+import com.example.workflow.model.Order;
+import com.example.workflow.model.ProcessStart;
+import com.example.workflow.repository.OrderRepository;
+import com.example.workflow.repository.ProcessStartRepository;
+import com.example.workflow.utils.Constants;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.camunda.bpm.engine.RuntimeService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Khởi tạo quy trình Camunda qua outbox: thanh toán chỉ ghi một dòng process_start_outbox trong cùng
+// transaction với đơn hàng, dispatcher chạy nền lấy các dòng đến hạn theo lô và khởi tạo song song
+// trên pool có giới hạn. Mỗi dòng được xóa trong cùng transaction với lần khởi tạo của nó,
+// nên một đơn hàng chỉ có một process instance kể cả khi nhiều node cùng chạy dispatcher.
+@Service
+public class ProcessStartDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessStartDispatcher.class);
+
+    @Autowired
+    private ProcessStartRepository processStartRepository;
+
+    @Autowired
+    private RuntimeService runtimeService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ProductBulkWriteService productBulkWriteService;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.process-outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.process-outbox.threads:4}")
+    private int threads;
+
+    // Quá số lần này thì bỏ cuộc: đơn hàng chuyển FAILED, tồn kho được trả lại,
+    // dòng được giữ lại trong bảng để kiểm tra thủ công và đếm trong gauge process.outbox.dead
+    @Value("${app.process-outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${app.process-outbox.initial-backoff-ms:5000}")
+    private long initialBackoffMs;
+
+    @Value("${app.process-outbox.max-backoff-ms:600000}")
+    private long maxBackoffMs;
+
+    // Thời gian một node giữ lô đã lấy; node chết giữa chừng thì node khác lấy lại sau khoảng này
+    @Value("${app.process-outbox.lease-ms:60000}")
+    private long leaseMs;
+
+    private ThreadPoolExecutor executor;
+    private Timer startTimer;
+    private Counter failureCounter;
+
+    // Cập nhật ở mỗi lần drain, gauge chỉ đọc lại giá trị này
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong dead = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, batchSize)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "process-start-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        MeterRegistry registry = meterRegistry != null ? meterRegistry : Metrics.globalRegistry;
+        Gauge.builder("process.outbox.lag.seconds", lagMillis, lag -> lag.get() / 1000.0)
+                .description("Tuổi của yêu cầu khởi tạo quy trình cũ nhất còn chờ")
+                .register(registry);
+        Gauge.builder("process.outbox.pending", pending, AtomicLong::get)
+                .description("Số yêu cầu khởi tạo quy trình còn chờ")
+                .register(registry);
+        // Lớn hơn 0 nghĩa là có đơn hàng không khởi tạo được quy trình: cần cảnh báo
+        Gauge.builder("process.outbox.dead", dead, AtomicLong::get)
+                .description("Số yêu cầu khởi tạo quy trình đã bỏ cuộc sau max-attempts lần")
+                .register(registry);
+        startTimer = Timer.builder("process.outbox.start.duration")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        failureCounter = Counter.builder("process.outbox.failures")
+                .register(registry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Ghi yêu cầu khởi tạo trong transaction của người gọi: rollback đơn hàng thì yêu cầu cũng mất
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(String processKey, String businessKey, Map<String, Object> variables) {
+        ProcessStart start = new ProcessStart();
+        start.setProcessKey(processKey);
+        start.setBusinessKey(businessKey);
+        start.setVariables(variables);
+        processStartRepository.save(start);
+    }
+
+    @Scheduled(fixedDelayString = "${app.process-outbox.poll-interval-ms:500}")
+    public void drain() {
+        try {
+            // Lặp tới khi hết việc đến hạn; chờ hết lô trước khi lấy lô tiếp để pool không bị tràn
+            while (true) {
+                List<ProcessStart> batch = transactionTemplate.execute(status -> claimBatch());
+                if (batch == null || batch.isEmpty()) {
+                    break;
+                }
+                dispatch(batch);
+                if (batch.size() < batchSize || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+            }
+        } finally {
+            refreshLag();
+        }
+    }
+
+    // Lấy lô đến hạn và đẩy next_attempt_at ra sau lease-ms để node khác không lấy trùng khi lô đang chạy
+    private List<ProcessStart> claimBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<ProcessStart> batch = processStartRepository.lockDueBatch(now, maxAttempts, batchSize);
+        LocalDateTime leaseUntil = now.plusNanos(leaseMs * 1_000_000);
+        for (ProcessStart start : batch) {
+            start.setNextAttemptAt(leaseUntil);
+        }
+        return batch;
+    }
+
+    private void dispatch(List<ProcessStart> batch) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(batch.size());
+        for (ProcessStart start : batch) {
+            try {
+                futures.add(CompletableFuture.runAsync(() -> startOne(start), executor));
+            } catch (RejectedExecutionException e) {
+                // Dòng vẫn đang được giữ, sẽ được lấy lại khi hết lease
+                logger.atWarn().addKeyValue("businessKey", start.getBusinessKey())
+                        .log("Pool khởi tạo quy trình đầy, để lại cho lần sau");
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    private void startOne(ProcessStart start) {
+        long begin = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (processStartRepository.deleteClaimed(start.getId()) == 0) {
+                    return; // Đã được node khác khởi tạo sau khi lease hết hạn
+                }
+                // Camunda dùng chung transaction của Spring: khởi tạo lỗi thì dòng outbox không bị xóa
+                runtimeService.startProcessInstanceByKey(start.getProcessKey(), start.getBusinessKey(),
+                        start.getVariables());
+            });
+            startTimer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        } catch (RuntimeException e) {
+            recordFailure(start, e);
+        }
+    }
+
+    private void recordFailure(ProcessStart start, RuntimeException e) {
+        failureCounter.increment();
+        int attempts = start.getAttempts() + 1;
+        boolean giveUp = attempts >= maxAttempts;
+        long backoff = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempts - 1, 20));
+        String message = String.valueOf(e.getMessage());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                processStartRepository.recordFailure(
+                        start.getId(), attempts, LocalDateTime.now().plusNanos(backoff * 1_000_000),
+                        message.length() > 1000 ? message.substring(0, 1000) : message);
+                // Bỏ cuộc cùng transaction với lần ghi lỗi: hoặc cả hai, hoặc dòng được thử lại khi hết lease
+                if (giveUp) {
+                    failOrder(start);
+                }
+            });
+        } catch (RuntimeException updateError) {
+            // Không ghi được lỗi: dòng được thử lại khi hết lease
+            e.addSuppressed(updateError);
+        }
+        if (giveUp) {
+            logger.atError()
+                    .addKeyValue("processKey", start.getProcessKey())
+                    .addKeyValue("businessKey", start.getBusinessKey())
+                    .addKeyValue("attempt", attempts)
+                    .setCause(e)
+                    .log("Bỏ cuộc khởi tạo quy trình, đơn hàng chuyển FAILED");
+        } else {
+            logger.atWarn()
+                    .addKeyValue("processKey", start.getProcessKey())
+                    .addKeyValue("businessKey", start.getBusinessKey())
+                    .addKeyValue("attempt", attempts)
+                    .setCause(e)
+                    .log("Khởi tạo quy trình thất bại");
+        }
+    }
+
+    // Đơn hàng không có quy trình thì không bao giờ được giao: đánh dấu FAILED và trả lại tồn kho đã trừ lúc thanh toán
+    private void failOrder(ProcessStart start) {
+        if (!Constants.ORDER_PROCESS.equals(start.getProcessKey())) {
+            return;
+        }
+        UUID orderId = UUID.fromString(start.getBusinessKey());
+        orderRepository.findById(orderId).ifPresent(order -> {
+            order.setStatus(Order.OrderStatus.FAILED);
+            orderRepository.save(order);
+        });
+        productBulkWriteService.restoreOrderStock(orderId);
+    }
+
+    private void refreshLag() {
+        try {
+            LocalDateTime oldest = processStartRepository.findOldestPendingCreatedAt(maxAttempts);
+            lagMillis.set(oldest == null ? 0 : Math.max(0, Duration.between(oldest, LocalDateTime.now()).toMillis()));
+            pending.set(processStartRepository.countByAttemptsLessThan(maxAttempts));
+            dead.set(processStartRepository.countByAttemptsGreaterThanEqual(maxAttempts));
+        } catch (RuntimeException e) {
+            logger.atDebug().setCause(e).log("Không đọc được độ trễ outbox khởi tạo quy trình");
+        }
+    }
+}
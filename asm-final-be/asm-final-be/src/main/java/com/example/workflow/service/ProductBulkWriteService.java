@@ -0,0 +1,255 @@
+package com.example.workflow.service;
+
+import com.example.workflow.config.CacheConfig;
+import com.example.workflow.dto.ProductBulkUpdateResultDTO;
+import com.example.workflow.dto.request.ProductBulkUpdateRequest;
+import com.example.workflow.model.Category;
+import com.example.workflow.model.Product;
+import com.example.workflow.repository.CategoryRepository;
+import com.example.workflow.repository.CheckoutRepository;
+import com.example.workflow.repository.ProductBulkRepository;
+import com.example.workflow.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Đường ghi hàng loạt cho import/seed/đổi giá: ghi bằng JDBC thay vì saveAll/save từng entity.
+// Danh mục được tra một lần cho cả lô, cache và index được làm mới một lần cho cả lô.
+@Service
+public class ProductBulkWriteService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductBulkWriteService.class);
+
+    @Autowired
+    private ProductBulkRepository productBulkRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CheckoutRepository checkoutRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private CatalogVersionService catalogVersionService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    // Giới hạn số sản phẩm trong một request cập nhật hàng loạt
+    @Value("${app.catalog.bulk-update.max-items:5000}")
+    private int maxBulkUpdateItems;
+
+    @Transactional
+    public List<Product> upsert(List<Product> products) {
+        if (products.isEmpty()) {
+            return List.of();
+        }
+        Set<UUID> categoryIds = new HashSet<>();
+        for (Product product : products) {
+            if (product.getCategory() == null || product.getCategory().getId() == null) {
+                throw new IllegalArgumentException("Sản phẩm thiếu danh mục: " + product.getName());
+            }
+            if (product.getPrice() == null || product.getStock() == null) {
+                throw new IllegalArgumentException("Sản phẩm thiếu giá hoặc tồn kho: " + product.getName());
+            }
+            categoryIds.add(product.getCategory().getId());
+        }
+        Map<UUID, Category> categories = categoryRepository.findAllById(categoryIds).stream()
+                .collect(Collectors.toMap(Category::getId, Function.identity()));
+        for (UUID categoryId : categoryIds) {
+            if (!categories.containsKey(categoryId)) {
+                throw new IllegalArgumentException("Không tìm thấy danh mục với ID: " + categoryId);
+            }
+        }
+
+        long start = System.nanoTime();
+        List<Product> saved = productBulkRepository.upsert(products, categories);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        logger.atDebug()
+                .addKeyValue("rows", saved.size())
+                .addKeyValue("elapsedMs", elapsedMillis)
+                .log("Đã upsert lô sản phẩm");
+
+        // Xóa cả cache một lần (một thông báo invalidation) thay vì evict từng id
+        Cache productCache = cacheManager.getCache(CacheConfig.PRODUCTS);
+        if (productCache != null) {
+            productCache.clear();
+        }
+        catalogVersionService.markChanged();
+        eventPublisher.publishEvent(ProductChangedEvent.upserted(saved));
+        return saved;
+    }
+
+    // Cập nhật giá/tồn kho hàng loạt với kiểm tra version.
+    // Sản phẩm lệch version (ví dụ vừa bị trừ kho khi thanh toán) được báo CONFLICT, phần còn lại vẫn được ghi.
+    @Transactional
+    public ProductBulkUpdateResultDTO updatePricesAndStock(ProductBulkUpdateRequest request) {
+        List<ProductBulkUpdateRequest.Item> items = request.getItems();
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("Danh sách sản phẩm cần cập nhật không được để trống");
+        }
+        if (items.size() > maxBulkUpdateItems) {
+            throw new IllegalArgumentException("Tối đa " + maxBulkUpdateItems + " sản phẩm mỗi lần cập nhật");
+        }
+
+        ProductBulkUpdateResultDTO.ItemResult[] results = new ProductBulkUpdateResultDTO.ItemResult[items.size()];
+        List<Integer> validIndexes = new ArrayList<>();
+        Set<UUID> seen = new HashSet<>();
+        for (int i = 0; i < items.size(); i++) {
+            String error = validate(items.get(i), seen);
+            if (error != null) {
+                results[i] = itemResult(items.get(i), ProductBulkUpdateResultDTO.Status.INVALID, null, error);
+            } else {
+                validIndexes.add(i);
+            }
+        }
+        // Khóa dòng theo thứ tự id để hai lượt cập nhật đồng thời không deadlock lẫn nhau
+        validIndexes.sort(Comparator.comparing(i -> items.get(i).getProductId()));
+        List<ProductBulkUpdateRequest.Item> toUpdate = validIndexes.stream().map(items::get).toList();
+
+        int[] counts = productBulkRepository.updatePriceAndStock(toUpdate);
+
+        List<UUID> updatedIds = new ArrayList<>();
+        List<UUID> missedIds = new ArrayList<>();
+        for (int k = 0; k < toUpdate.size(); k++) {
+            (counts[k] > 0 ? updatedIds : missedIds).add(toUpdate.get(k).getProductId());
+        }
+        Map<UUID, Long> currentVersions = productBulkRepository.findVersions(missedIds);
+
+        for (int k = 0; k < toUpdate.size(); k++) {
+            int index = validIndexes.get(k);
+            ProductBulkUpdateRequest.Item item = toUpdate.get(k);
+            if (counts[k] > 0) {
+                results[index] = itemResult(item, ProductBulkUpdateResultDTO.Status.UPDATED, item.getVersion() + 1, null);
+            } else if (currentVersions.containsKey(item.getProductId())) {
+                results[index] = itemResult(item, ProductBulkUpdateResultDTO.Status.CONFLICT,
+                        currentVersions.get(item.getProductId()), "Sản phẩm đã bị thay đổi, vui lòng tải lại");
+            } else {
+                results[index] = itemResult(item, ProductBulkUpdateResultDTO.Status.NOT_FOUND, null,
+                        "Sản phẩm không tồn tại với ID: " + item.getProductId());
+            }
+        }
+
+        if (!updatedIds.isEmpty()) {
+            // Một lần invalidation cho cả lô
+            Cache productCache = cacheManager.getCache(CacheConfig.PRODUCTS);
+            if (productCache != null) {
+                productCache.clear();
+            }
+            catalogVersionService.markChanged();
+            eventPublisher.publishEvent(ProductChangedEvent.upserted(productRepository.findAllById(updatedIds)));
+        }
+        logger.atInfo()
+                .addKeyValue("requested", items.size())
+                .addKeyValue("updated", updatedIds.size())
+                .log("Cập nhật giá/tồn kho hàng loạt");
+        return new ProductBulkUpdateResultDTO(updatedIds.size(), items.size() - updatedIds.size(), List.of(results));
+    }
+
+    // Trừ kho cho các dòng của một đơn hàng ngay khi thanh toán (StockReservationService đã giữ chỗ từ lúc thêm vào giỏ).
+    // Một sản phẩm không đủ hàng thì ném lỗi và cả transaction thanh toán bị rollback.
+    // Trả về các sản phẩm sau khi trừ (tồn kho còn lại).
+    @Transactional
+    public List<Product> decrementStock(Map<UUID, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return List.of();
+        }
+        List<UUID> productIds = new ArrayList<>(quantities.keySet());
+        List<Integer> amounts = productIds.stream().map(quantities::get).toList();
+
+        List<Product> updated = productBulkRepository.decrementStock(productIds, amounts);
+        if (updated.size() < productIds.size()) {
+            Set<UUID> decremented = updated.stream().map(Product::getId).collect(Collectors.toSet());
+            UUID productId = productIds.stream().filter(id -> !decremented.contains(id)).findFirst().orElseThrow();
+            String name = productRepository.findById(productId).map(Product::getName).orElse(productId.toString());
+            throw new RuntimeException("Insufficient stock for product: " + name);
+        }
+
+        publishStockChange(updated);
+        return updated;
+    }
+
+    // Trả lại tồn kho của đơn hàng kết thúc mà không giao (khách hủy, hết hàng, thanh toán thất bại,
+    // không khởi tạo được quy trình). Cờ stock_deducted của đơn được xóa cùng lúc nên mỗi đơn chỉ trả một lần.
+    @Transactional
+    public void restoreOrderStock(UUID orderId) {
+        Map<UUID, Integer> quantities = checkoutRepository.claimStockRelease(orderId);
+        if (quantities.isEmpty()) {
+            return;
+        }
+        List<UUID> productIds = new ArrayList<>(quantities.keySet());
+        List<Integer> amounts = productIds.stream().map(quantities::get).toList();
+
+        List<Product> updated = productBulkRepository.restoreStock(productIds, amounts);
+        logger.atInfo()
+                .addKeyValue("orderId", orderId)
+                .addKeyValue("products", updated.size())
+                .log("Đã trả lại tồn kho của đơn hàng");
+        publishStockChange(updated);
+    }
+
+    // Đổi tồn kho cũng đổi dữ liệu catalog: xóa cache, tăng phiên bản và cập nhật index tìm kiếm.
+    // Dữ liệu cho index lấy từ RETURNING của câu lệnh ghi, chỉ gắn thêm danh mục (qua cache danh mục).
+    private void publishStockChange(List<Product> updated) {
+        Cache productCache = cacheManager.getCache(CacheConfig.PRODUCTS);
+        for (Product product : updated) {
+            categoryRepository.findById(product.getCategory().getId()).ifPresent(product::setCategory);
+            if (productCache != null) {
+                productCache.evict(product.getId());
+            }
+        }
+        catalogVersionService.markChanged();
+        eventPublisher.publishEvent(ProductChangedEvent.upserted(updated));
+    }
+
+    private static String validate(ProductBulkUpdateRequest.Item item, Set<UUID> seen) {
+        if (item.getProductId() == null) {
+            return "Thiếu ID sản phẩm";
+        }
+        if (!seen.add(item.getProductId())) {
+            return "Sản phẩm bị lặp trong request";
+        }
+        if (item.getVersion() == null) {
+            return "Thiếu version của sản phẩm";
+        }
+        if (item.getPrice() == null && item.getStock() == null) {
+            return "Cần ít nhất giá hoặc tồn kho";
+        }
+        if (item.getPrice() != null && item.getPrice().compareTo(BigDecimal.ZERO) <= 0) {
+            return "Giá phải lớn hơn 0";
+        }
+        if (item.getStock() != null && item.getStock() < 0) {
+            return "Tồn kho không được âm";
+        }
+        return null;
+    }
+
+    private static ProductBulkUpdateResultDTO.ItemResult itemResult(ProductBulkUpdateRequest.Item item,
+                                                                    ProductBulkUpdateResultDTO.Status status,
+                                                                    Long version, String message) {
+        return new ProductBulkUpdateResultDTO.ItemResult(item.getProductId(), status, version, message);
+    }
+}
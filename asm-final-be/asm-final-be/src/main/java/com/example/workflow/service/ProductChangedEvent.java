@@ -0,0 +1,28 @@
+package com.example.workflow.service;
+
+import com.example.workflow.model.Product;
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+// Phát ra sau mỗi lần ghi sản phẩm để các index trong bộ nhớ cập nhật tăng dần
+@Getter
+public class ProductChangedEvent {
+    private final List<Product> upserted;
+    private final Collection<UUID> deletedIds;
+
+    public ProductChangedEvent(List<Product> upserted, Collection<UUID> deletedIds) {
+        this.upserted = upserted;
+        this.deletedIds = deletedIds;
+    }
+
+    public static ProductChangedEvent upserted(List<Product> products) {
+        return new ProductChangedEvent(products, List.of());
+    }
+
+    public static ProductChangedEvent deleted(UUID productId) {
+        return new ProductChangedEvent(List.of(), List.of(productId));
+    }
+}
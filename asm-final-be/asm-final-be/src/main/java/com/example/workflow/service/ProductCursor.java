@@ -0,0 +1,60 @@
+package com.example.workflow.service;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+// Cursor của phân trang keyset: giá trị cột sắp xếp + id của dòng cuối trang trước.
+// Được mã hóa base64url để client coi như chuỗi mờ (opaque).
+final class ProductCursor {
+
+    private final String sort;
+    private final String direction;
+    private final Comparable<?> value;
+    private final UUID id;
+
+    ProductCursor(String sort, String direction, Comparable<?> value, UUID id) {
+        this.sort = sort;
+        this.direction = direction;
+        this.value = value;
+        this.id = id;
+    }
+
+    Comparable<?> getValue() {
+        return value;
+    }
+
+    UUID getId() {
+        return id;
+    }
+
+    String encode() {
+        String raw = sort + "|" + direction + "|" + id + "|" + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Cursor phải được tạo với cùng kiểu sắp xếp; tên sản phẩm có thể chứa '|' nên chỉ tách 3 lần
+    static ProductCursor decode(String token, String sort, String direction) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 4);
+            if (parts.length != 4 || !parts[0].equals(sort) || !parts[1].equals(direction)) {
+                throw new IllegalArgumentException("Cursor không khớp với kiểu sắp xếp");
+            }
+            return new ProductCursor(sort, direction, parseValue(sort, parts[3]), UUID.fromString(parts[2]));
+        } catch (IllegalArgumentException | java.time.format.DateTimeParseException e) {
+            throw new IllegalArgumentException("Cursor không hợp lệ");
+        }
+    }
+
+    private static Comparable<?> parseValue(String sort, String value) {
+        return switch (sort) {
+            case "createdAt" -> LocalDateTime.parse(value);
+            case "price" -> new BigDecimal(value);
+            case "name" -> value;
+            default -> throw new IllegalArgumentException("Kiểu sắp xếp không hợp lệ: " + sort);
+        };
+    }
+}
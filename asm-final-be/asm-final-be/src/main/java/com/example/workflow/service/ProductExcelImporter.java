@@ -0,0 +1,406 @@
+package com.example.workflow.service;
+
+import com.example.workflow.dto.ImportResultDTO;
+import com.example.workflow.model.Category;
+import com.example.workflow.model.Product;
+import com.example.workflow.repository.CategoryRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.ss.util.NumberToTextConverter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Đọc file Excel sản phẩm theo kiểu streaming (POI SAX/event model) nên bộ nhớ không phụ thuộc kích thước file:
+//   1 thread parse XML của sheet -> hàng đợi có giới hạn -> N thread kiểm tra dữ liệu song song
+//   -> thread gọi nhận kết quả theo đúng thứ tự dòng và ghi theo từng chunk qua BatchSink.
+@Service
+public class ProductExcelImporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductExcelImporter.class);
+
+    // Cột dữ liệu theo thứ tự mặc định (khi file không có dòng tiêu đề nhận diện được)
+    private static final String[] FIELDS = {"name", "categoryid", "price", "stock", "imageurl"};
+    private static final int NAME = 0;
+    private static final int CATEGORY_ID = 1;
+    private static final int PRICE = 2;
+    private static final int STOCK = 3;
+    private static final int IMAGE_URL = 4;
+
+    // Trả về giá trị số thô ("150000", "1.5") thay vì chuỗi đã định dạng theo style của ô ("150,000")
+    private static final DataFormatter RAW_NUMBER_FORMATTER = new DataFormatter(Locale.ROOT) {
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            return NumberToTextConverter.toText(value);
+        }
+    };
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    // Số thread kiểm tra dữ liệu cho mỗi lượt import (0 -> số core - 1)
+    @Value("${app.import.validator-threads:0}")
+    private int validatorThreads;
+
+    @Value("${app.import.queue-capacity:1024}")
+    private int queueCapacity;
+
+    // Số dòng mỗi chunk được commit
+    @Value("${app.import.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${app.import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    // Số lượt import chạy đồng thời; mỗi lượt được đảm bảo đủ thread nên không thể kẹt lẫn nhau
+    @Value("${app.import.max-concurrent:2}")
+    private int maxConcurrent;
+
+    private int workersPerImport;
+    private Semaphore permits;
+    private ExecutorService executor;
+
+    @PostConstruct
+    void init() {
+        workersPerImport = validatorThreads > 0
+                ? validatorThreads
+                : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        permits = new Semaphore(maxConcurrent);
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool((workersPerImport + 1) * maxConcurrent, runnable -> {
+            Thread thread = new Thread(runnable, "product-import-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Nhận một chunk: sản phẩm hợp lệ và lỗi của các dòng trong chunk;
+    // lastRow là dòng Excel cuối cùng thuộc chunk (kể cả dòng lỗi)
+    @FunctionalInterface
+    public interface BatchSink {
+        void write(List<Product> batch, List<ImportResultDTO.RowError> errors, int lastRow);
+    }
+
+    // Đọc file .xlsx, bỏ qua các dòng <= skipThroughRow (dùng khi chạy tiếp một lượt import dở dang)
+    public ImportResultDTO process(Path file, int skipThroughRow, BatchSink sink) {
+        if (!permits.tryAcquire()) {
+            throw new IllegalStateException("Đang có quá nhiều lượt import, vui lòng thử lại sau");
+        }
+        BlockingQueue<RawRow> rawRows = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<RowResult> results = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicReference<Exception> parseFailure = new AtomicReference<>();
+        List<Future<?>> tasks = new ArrayList<>();
+
+        ImportResultDTO result = new ImportResultDTO(0, 0, 0, new ArrayList<>());
+        try {
+            // Nạp danh mục một lần cho cả file thay vì truy vấn theo từng dòng
+            Map<UUID, Category> categories = categoryRepository.findAll().stream()
+                    .collect(Collectors.toMap(Category::getId, Function.identity()));
+
+            tasks.add(executor.submit(() -> parse(file, skipThroughRow, rawRows, parseFailure)));
+            for (int i = 0; i < workersPerImport; i++) {
+                tasks.add(executor.submit(() -> validate(rawRows, results, categories)));
+            }
+
+            // Kết quả về không theo thứ tự; sắp lại theo số thứ tự dòng trước khi ghi
+            TreeMap<Long, RowResult> pending = new TreeMap<>();
+            long nextSequence = 0;
+            int finishedWorkers = 0;
+            int lastRow = skipThroughRow;
+            List<Product> batch = new ArrayList<>(chunkSize);
+            List<ImportResultDTO.RowError> chunkErrors = new ArrayList<>();
+            int rowsInChunk = 0;
+
+            while (finishedWorkers < workersPerImport) {
+                RowResult rowResult = results.take();
+                if (rowResult == RowResult.END) {
+                    finishedWorkers++;
+                    continue;
+                }
+                pending.put(rowResult.sequence(), rowResult);
+                while (!pending.isEmpty() && pending.firstKey() == nextSequence) {
+                    RowResult ordered = pending.pollFirstEntry().getValue();
+                    nextSequence++;
+                    lastRow = ordered.row();
+                    result.setTotalRows(result.getTotalRows() + 1);
+                    if (ordered.error() != null) {
+                        ImportResultDTO.RowError error = new ImportResultDTO.RowError(ordered.row(), ordered.error());
+                        result.setFailed(result.getFailed() + 1);
+                        chunkErrors.add(error);
+                        if (result.getErrors().size() < maxReportedErrors) {
+                            result.getErrors().add(error);
+                        }
+                    } else {
+                        batch.add(ordered.product());
+                    }
+                    if (++rowsInChunk >= chunkSize) {
+                        sink.write(batch, chunkErrors, lastRow);
+                        result.setImported(result.getImported() + batch.size());
+                        batch = new ArrayList<>(chunkSize);
+                        chunkErrors = new ArrayList<>();
+                        rowsInChunk = 0;
+                    }
+                }
+            }
+
+            Exception failure = parseFailure.get();
+            if (failure != null) {
+                throw new IllegalArgumentException("File Excel không hợp lệ: " + failure.getMessage(), failure);
+            }
+            // Chunk cuối (có thể rỗng) để ghi nhận tiến độ tới dòng cuối cùng
+            sink.write(batch, chunkErrors, lastRow);
+            result.setImported(result.getImported() + batch.size());
+
+            logger.atInfo()
+                    .addKeyValue("totalRows", result.getTotalRows())
+                    .addKeyValue("imported", result.getImported())
+                    .addKeyValue("failed", result.getFailed())
+                    .log("Import hoàn tất");
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Import bị gián đoạn", e);
+        } finally {
+            // Nếu ghi lỗi giữa chừng, parser/validator có thể đang chờ hàng đợi: hủy để giải phóng thread
+            tasks.forEach(task -> task.cancel(true));
+            permits.release();
+        }
+    }
+
+    private void parse(Path file, int skipThroughRow, BlockingQueue<RawRow> rawRows,
+                       AtomicReference<Exception> parseFailure) {
+        try (OPCPackage pkg = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg, false);
+            XSSFReader reader = new XSSFReader(pkg);
+            StylesTable styles = reader.getStylesTable();
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                throw new IllegalArgumentException("File không có sheet nào");
+            }
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(styles, strings,
+                        new RowCollector(rawRows, skipThroughRow), RAW_NUMBER_FORMATTER, false));
+                parser.parse(new InputSource(sheet));
+            }
+        } catch (Exception e) {
+            if (!(e instanceof InterruptedRowException)) {
+                parseFailure.set(e);
+            }
+        } finally {
+            try {
+                for (int i = 0; i < workersPerImport; i++) {
+                    rawRows.put(RawRow.END);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void validate(BlockingQueue<RawRow> rawRows, BlockingQueue<RowResult> results,
+                          Map<UUID, Category> categories) {
+        try {
+            while (true) {
+                RawRow row = rawRows.take();
+                if (row == RawRow.END) {
+                    results.put(RowResult.END);
+                    return;
+                }
+                results.put(toProduct(row, categories));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private RowResult toProduct(RawRow row, Map<UUID, Category> categories) {
+        String[] values = row.values();
+        try {
+            String name = values[NAME];
+            if (name == null || name.isBlank()) {
+                return RowResult.error(row, "Tên sản phẩm không được để trống");
+            }
+
+            if (values[CATEGORY_ID] == null) {
+                return RowResult.error(row, "Category ID không hợp lệ");
+            }
+            UUID categoryId;
+            try {
+                categoryId = UUID.fromString(values[CATEGORY_ID].trim());
+            } catch (IllegalArgumentException e) {
+                return RowResult.error(row, "Category ID không hợp lệ: " + values[CATEGORY_ID]);
+            }
+            Category category = categories.get(categoryId);
+            if (category == null) {
+                return RowResult.error(row, "Không tìm thấy danh mục với ID " + categoryId);
+            }
+
+            BigDecimal price = values[PRICE] == null ? null : new BigDecimal(values[PRICE].trim());
+            if (price == null || price.compareTo(BigDecimal.ZERO) <= 0) {
+                return RowResult.error(row, "Giá sản phẩm phải lớn hơn 0");
+            }
+
+            Integer stock = values[STOCK] == null ? null : Integer.valueOf(values[STOCK].trim());
+            if (stock == null || stock < 0) {
+                return RowResult.error(row, "Số lượng tồn kho không được âm");
+            }
+
+            Product product = new Product();
+            product.setName(name.trim());
+            product.setCategory(category);
+            product.setPrice(price);
+            product.setStock(stock);
+            if (values[IMAGE_URL] != null && !values[IMAGE_URL].isBlank()) {
+                product.setImageUrl(values[IMAGE_URL].trim());
+            }
+            product.setCreatedAt(LocalDateTime.now());
+            return new RowResult(row.sequence(), row.row(), product, null);
+        } catch (NumberFormatException e) {
+            return RowResult.error(row, "Giá hoặc tồn kho không phải là số hợp lệ");
+        }
+    }
+
+    // Gom các ô của từng dòng; dòng đầu tiên là tiêu đề dùng để xác định vị trí cột
+    private static class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final BlockingQueue<RawRow> rawRows;
+        private final int skipThroughRow;
+        private final Map<Integer, Integer> columnToField = new HashMap<>();
+        private long sequence;
+        private String[] current;
+        private int nextColumn;
+
+        RowCollector(BlockingQueue<RawRow> rawRows, int skipThroughRow) {
+            this.rawRows = rawRows;
+            this.skipThroughRow = skipThroughRow;
+            for (int i = 0; i < FIELDS.length; i++) {
+                columnToField.put(i, i);
+            }
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            current = new String[rowNum == 0 ? 32 : FIELDS.length];
+            nextColumn = 0;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference != null ? new CellReference(cellReference).getCol() : nextColumn;
+            nextColumn = column + 1;
+            if (current.length == FIELDS.length) {
+                Integer field = columnToField.get(column);
+                if (field != null) {
+                    current[field] = formattedValue;
+                }
+            } else if (column < current.length) {
+                current[column] = formattedValue;
+            }
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (rowNum == 0) {
+                readHeader(current);
+                return;
+            }
+            int excelRow = rowNum + 1;
+            if (excelRow <= skipThroughRow || isBlank(current)) {
+                return;
+            }
+            try {
+                rawRows.put(new RawRow(sequence++, excelRow, current));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedRowException();
+            }
+        }
+
+        private void readHeader(String[] header) {
+            Map<Integer, Integer> mapping = new HashMap<>();
+            for (int column = 0; column < header.length; column++) {
+                if (header[column] == null) {
+                    continue;
+                }
+                String normalized = header[column].toLowerCase(Locale.ROOT).replaceAll("[\\s_]", "");
+                for (int field = 0; field < FIELDS.length; field++) {
+                    if (FIELDS[field].equals(normalized)) {
+                        mapping.put(column, field);
+                    }
+                }
+            }
+            // Không nhận diện được tiêu đề thì giữ thứ tự cột mặc định
+            if (mapping.containsValue(NAME)) {
+                columnToField.clear();
+                columnToField.putAll(mapping);
+            }
+        }
+
+        private static boolean isBlank(String[] values) {
+            for (String value : values) {
+                if (value != null && !value.isBlank()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // Dừng parser SAX khi thread import bị hủy
+    private static class InterruptedRowException extends RuntimeException {
+    }
+
+    private record RawRow(long sequence, int row, String[] values) {
+        static final RawRow END = new RawRow(-1, -1, new String[0]);
+    }
+
+    private record RowResult(long sequence, int row, Product product, String error) {
+        static final RowResult END = new RowResult(-1, -1, null, null);
+
+        static RowResult error(RawRow row, String message) {
+            return new RowResult(row.sequence(), row.row(), null, message);
+        }
+    }
+}
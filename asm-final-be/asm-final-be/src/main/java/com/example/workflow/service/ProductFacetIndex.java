@@ -0,0 +1,431 @@
+package com.example.workflow.service;
+
+import com.example.workflow.config.CacheConfig;
+import com.example.workflow.config.RemoteCacheInvalidationEvent;
+import com.example.workflow.dto.ProductFacetDTO;
+import com.example.workflow.dto.request.ProductFacetRequest;
+import com.example.workflow.model.Product;
+import com.example.workflow.repository.ProductRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+// Index bitmap cho lọc theo facet (danh mục, khoảng giá, tồn kho).
+// Mỗi sản phẩm có một số thứ tự (ordinal); mỗi giá trị facet là một BitSet trên các ordinal,
+// nên lọc và đếm chỉ là phép AND/OR trên bitmap, không cần GROUP BY trên DB.
+@Service
+public class ProductFacetIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductFacetIndex.class);
+
+    public static final String IN_STOCK = "inStock";
+    public static final String OUT_OF_STOCK = "outOfStock";
+
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 100;
+    // Heap trong topItems giữ offset + limit phần tử: trang sâu hơn mốc này trả về rỗng thay vì dựng heap khổng lồ
+    private static final int MAX_OFFSET = 10_000;
+    // Số sản phẩm mỗi phần khi dựng lại index song song
+    private static final int REBUILD_CHUNK_SIZE = 4096;
+
+    // Mới nhất trước, giống thứ tự mặc định của danh sách sản phẩm
+    private static final Comparator<Product> NEWEST_FIRST = Comparator
+            .comparing(Product::getCreatedAt, Comparator.nullsLast(Comparator.<LocalDateTime>reverseOrder()))
+            .thenComparing(Product::getId);
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    // Các mốc chia khoảng giá (VND), ví dụ 100000,200000 -> 0-100000, 100000-200000, 200000+
+    @Value("${app.catalog.price-buckets:100000,200000,500000,1000000}")
+    private BigDecimal[] priceBoundaries;
+
+    private String[] bucketLabels;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<UUID, Integer> ordinals = new HashMap<>();
+    private final List<Product> products = new ArrayList<>(); // ordinal -> bản sao sản phẩm (null nếu ô trống)
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>(); // tái sử dụng ô trống để bitmap không phình ra
+    private BitSet live = new BitSet();
+    private Bitmaps bitmaps;
+    // Khác null trong lúc rebuild: sự kiện tới trong lúc đọc DB được phát lại lên dữ liệu vừa đọc
+    private List<Object> replayBuffer;
+
+    @PostConstruct
+    void init() {
+        Arrays.sort(priceBoundaries);
+        bucketLabels = new String[priceBoundaries.length + 1];
+        BigDecimal lower = BigDecimal.ZERO;
+        for (int i = 0; i < priceBoundaries.length; i++) {
+            bucketLabels[i] = lower.toPlainString() + "-" + priceBoundaries[i].toPlainString();
+            lower = priceBoundaries[i];
+        }
+        bucketLabels[priceBoundaries.length] = lower.toPlainString() + "+";
+        bitmaps = new Bitmaps(bucketLabels.length);
+    }
+
+    // Dựng lại từ bảng products khi khởi động: chia theo dải ordinal, mỗi phần dựng bitmap riêng rồi OR lại
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        lock.writeLock().lock();
+        try {
+            replayBuffer = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        List<Product> snapshots;
+        try {
+            snapshots = productRepository.findAll().parallelStream()
+                    .map(ProductSnapshots::copyOf)
+                    .toList();
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                replayBuffer = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        int chunks = (snapshots.size() + REBUILD_CHUNK_SIZE - 1) / REBUILD_CHUNK_SIZE;
+        Bitmaps built = IntStream.range(0, chunks).parallel()
+                .mapToObj(chunk -> {
+                    Bitmaps partial = new Bitmaps(bucketLabels.length);
+                    int end = Math.min(snapshots.size(), (chunk + 1) * REBUILD_CHUNK_SIZE);
+                    for (int ordinal = chunk * REBUILD_CHUNK_SIZE; ordinal < end; ordinal++) {
+                        partial.add(ordinal, snapshots.get(ordinal), bucketOf(snapshots.get(ordinal).getPrice()));
+                    }
+                    return partial;
+                })
+                .reduce(Bitmaps::merge)
+                .orElseGet(() -> new Bitmaps(bucketLabels.length));
+
+        lock.writeLock().lock();
+        try {
+            ordinals.clear();
+            products.clear();
+            freeOrdinals.clear();
+            for (int ordinal = 0; ordinal < snapshots.size(); ordinal++) {
+                ordinals.put(snapshots.get(ordinal).getId(), ordinal);
+                products.add(snapshots.get(ordinal));
+            }
+            live = new BitSet(snapshots.size());
+            live.set(0, snapshots.size());
+            bitmaps = built;
+            List<Object> missed = replayBuffer;
+            replayBuffer = null;
+            for (Object event : missed) {
+                if (event instanceof ProductChangedEvent productEvent) {
+                    applyLocked(productEvent);
+                } else if (event instanceof CategoryChangedEvent categoryEvent) {
+                    applyLocked(categoryEvent);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.atInfo().addKeyValue("products", snapshots.size()).addKeyValue("chunks", chunks)
+                .log("Đã dựng index facet sản phẩm");
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (replayBuffer != null) {
+                replayBuffer.add(event);
+            }
+            applyLocked(event);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (replayBuffer != null) {
+                replayBuffer.add(event);
+            }
+            applyLocked(event);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void applyLocked(ProductChangedEvent event) {
+        event.getDeletedIds().forEach(this::removeLocked);
+        event.getUpserted().forEach(this::upsertLocked);
+    }
+
+    // Đổi tên danh mục không ảnh hưởng bitmap (khóa theo id) nhưng cần cập nhật bản sao trả về
+    private void applyLocked(CategoryChangedEvent event) {
+        BitSet members = bitmaps.byCategory.get(event.getCategory().getId());
+        if (members == null) {
+            return;
+        }
+        for (int ordinal = members.nextSetBit(0); ordinal >= 0; ordinal = members.nextSetBit(ordinal + 1)) {
+            Product updated = ProductSnapshots.copyOf(products.get(ordinal));
+            updated.setCategory(event.getCategory());
+            products.set(ordinal, ProductSnapshots.copyOf(updated));
+        }
+    }
+
+    // Node khác đã ghi catalog: nạp lại đúng sản phẩm đó (hoặc dựng lại toàn bộ nếu không rõ key)
+    @EventListener
+    public void onRemoteInvalidation(RemoteCacheInvalidationEvent event) {
+        if (!CacheConfig.PRODUCTS.equals(event.getCacheName()) && !CacheConfig.CATEGORIES.equals(event.getCacheName())) {
+            return;
+        }
+        if (CacheConfig.PRODUCTS.equals(event.getCacheName()) && event.getKey() instanceof UUID productId) {
+            Optional<Product> product = productRepository.findById(productId);
+            onProductChanged(product
+                    .map(p -> ProductChangedEvent.upserted(List.of(p)))
+                    .orElseGet(() -> ProductChangedEvent.deleted(productId)));
+            return;
+        }
+        rebuild();
+    }
+
+    public ProductFacetDTO query(ProductFacetRequest request) {
+        int offset = request.getOffset() == null ? 0 : Math.min(Math.max(0, request.getOffset()), MAX_OFFSET + 1);
+        int limit = request.getLimit() == null || request.getLimit() <= 0
+                ? DEFAULT_LIMIT : Math.min(request.getLimit(), MAX_LIMIT);
+
+        lock.readLock().lock();
+        try {
+            BitSet categoryFilter = categoryFilter(request.getCategoryId());
+            BitSet priceFilter = priceFilter(request.getPriceBucket());
+            BitSet stockFilter = stockFilter(request.getInStock());
+
+            BitSet matched = intersect(categoryFilter, priceFilter, stockFilter);
+
+            // Đếm theo từng facet với bộ lọc của các facet còn lại
+            Map<UUID, Integer> categoryCounts = new LinkedHashMap<>();
+            BitSet categoryBase = intersect(null, priceFilter, stockFilter);
+            for (Map.Entry<UUID, BitSet> entry : bitmaps.byCategory.entrySet()) {
+                categoryCounts.put(entry.getKey(), andCardinality(categoryBase, entry.getValue()));
+            }
+
+            Map<String, Integer> priceCounts = new LinkedHashMap<>();
+            BitSet priceBase = intersect(categoryFilter, null, stockFilter);
+            for (int bucket = 0; bucket < bucketLabels.length; bucket++) {
+                priceCounts.put(bucketLabels[bucket], andCardinality(priceBase, bitmaps.byPriceBucket[bucket]));
+            }
+
+            Map<String, Integer> stockCounts = new LinkedHashMap<>();
+            BitSet stockBase = intersect(categoryFilter, priceFilter, null);
+            int inStockCount = andCardinality(stockBase, bitmaps.inStock);
+            stockCounts.put(IN_STOCK, inStockCount);
+            stockCounts.put(OUT_OF_STOCK, stockBase.cardinality() - inStockCount);
+
+            return new ProductFacetDTO(topItems(matched, offset, limit), matched.cardinality(),
+                    categoryCounts, priceCounts, stockCounts);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<String> getPriceBuckets() {
+        return List.of(bucketLabels);
+    }
+
+    // Chỉ giữ offset + limit phần tử tốt nhất bằng heap thay vì sắp xếp toàn bộ kết quả
+    private List<Product> topItems(BitSet matched, int offset, int limit) {
+        if (offset > MAX_OFFSET) {
+            return List.of();
+        }
+        int wanted = offset + limit;
+        PriorityQueue<Product> heap = new PriorityQueue<>(wanted + 1, NEWEST_FIRST.reversed());
+        for (int ordinal = matched.nextSetBit(0); ordinal >= 0; ordinal = matched.nextSetBit(ordinal + 1)) {
+            heap.offer(products.get(ordinal));
+            if (heap.size() > wanted) {
+                heap.poll();
+            }
+        }
+        List<Product> top = new ArrayList<>(heap);
+        top.sort(NEWEST_FIRST);
+        return offset >= top.size() ? List.of() : top.subList(offset, top.size());
+    }
+
+    private BitSet categoryFilter(List<UUID> categoryIds) {
+        if (categoryIds == null || categoryIds.isEmpty()) {
+            return null;
+        }
+        BitSet filter = new BitSet();
+        for (UUID categoryId : categoryIds) {
+            BitSet members = bitmaps.byCategory.get(categoryId);
+            if (members != null) {
+                filter.or(members);
+            }
+        }
+        return filter;
+    }
+
+    private BitSet priceFilter(List<String> buckets) {
+        if (buckets == null || buckets.isEmpty()) {
+            return null;
+        }
+        BitSet filter = new BitSet();
+        for (String bucket : buckets) {
+            int index = Arrays.asList(bucketLabels).indexOf(bucket);
+            if (index < 0) {
+                throw new IllegalArgumentException("Khoảng giá không hợp lệ: " + bucket);
+            }
+            filter.or(bitmaps.byPriceBucket[index]);
+        }
+        return filter;
+    }
+
+    private BitSet stockFilter(Boolean inStock) {
+        if (inStock == null) {
+            return null;
+        }
+        if (inStock) {
+            return bitmaps.inStock;
+        }
+        BitSet outOfStock = (BitSet) live.clone();
+        outOfStock.andNot(bitmaps.inStock);
+        return outOfStock;
+    }
+
+    // null nghĩa là facet đó không lọc
+    private BitSet intersect(BitSet first, BitSet second, BitSet third) {
+        BitSet result = (BitSet) live.clone();
+        if (first != null) {
+            result.and(first);
+        }
+        if (second != null) {
+            result.and(second);
+        }
+        if (third != null) {
+            result.and(third);
+        }
+        return result;
+    }
+
+    private static int andCardinality(BitSet a, BitSet b) {
+        BitSet result = (BitSet) a.clone();
+        result.and(b);
+        return result.cardinality();
+    }
+
+    private int bucketOf(BigDecimal price) {
+        if (price == null) {
+            return 0;
+        }
+        for (int i = 0; i < priceBoundaries.length; i++) {
+            if (price.compareTo(priceBoundaries[i]) < 0) {
+                return i;
+            }
+        }
+        return priceBoundaries.length;
+    }
+
+    private void upsertLocked(Product product) {
+        if (product.getId() == null) {
+            return;
+        }
+        removeLocked(product.getId());
+        Product snapshot = ProductSnapshots.copyOf(product);
+        int ordinal;
+        if (freeOrdinals.isEmpty()) {
+            ordinal = products.size();
+            products.add(snapshot);
+        } else {
+            ordinal = freeOrdinals.pop();
+            products.set(ordinal, snapshot);
+        }
+        ordinals.put(snapshot.getId(), ordinal);
+        live.set(ordinal);
+        bitmaps.add(ordinal, snapshot, bucketOf(snapshot.getPrice()));
+    }
+
+    private void removeLocked(UUID productId) {
+        Integer ordinal = ordinals.remove(productId);
+        if (ordinal == null) {
+            return;
+        }
+        Product previous = products.get(ordinal);
+        bitmaps.remove(ordinal, previous, bucketOf(previous.getPrice()));
+        live.clear(ordinal);
+        products.set(ordinal, null);
+        freeOrdinals.push(ordinal);
+    }
+
+    private static class Bitmaps {
+        private final Map<UUID, BitSet> byCategory = new HashMap<>();
+        private final BitSet[] byPriceBucket;
+        private final BitSet inStock = new BitSet();
+
+        Bitmaps(int bucketCount) {
+            byPriceBucket = new BitSet[bucketCount];
+            for (int i = 0; i < bucketCount; i++) {
+                byPriceBucket[i] = new BitSet();
+            }
+        }
+
+        void add(int ordinal, Product product, int bucket) {
+            if (product.getCategory() != null) {
+                byCategory.computeIfAbsent(product.getCategory().getId(), id -> new BitSet()).set(ordinal);
+            }
+            byPriceBucket[bucket].set(ordinal);
+            if (product.getStock() != null && product.getStock() > 0) {
+                inStock.set(ordinal);
+            }
+        }
+
+        void remove(int ordinal, Product product, int bucket) {
+            if (product.getCategory() != null) {
+                UUID categoryId = product.getCategory().getId();
+                BitSet members = byCategory.get(categoryId);
+                if (members != null) {
+                    members.clear(ordinal);
+                    if (members.isEmpty()) {
+                        byCategory.remove(categoryId);
+                    }
+                }
+            }
+            byPriceBucket[bucket].clear(ordinal);
+            inStock.clear(ordinal);
+        }
+
+        Bitmaps merge(Bitmaps other) {
+            other.byCategory.forEach((categoryId, members) ->
+                    byCategory.merge(categoryId, members, (a, b) -> {
+                        a.or(b);
+                        return a;
+                    }));
+            for (int i = 0; i < byPriceBucket.length; i++) {
+                byPriceBucket[i].or(other.byPriceBucket[i]);
+            }
+            inStock.or(other.inStock);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.example.workflow.service;
+
+import com.example.workflow.config.CacheConfig;
+import com.example.workflow.model.Product;
+import com.example.workflow.repository.ProductBulkRepository;
+import com.example.workflow.repository.ProductRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Sinh ảnh thu nhỏ cho sản phẩm trên pool nền có giới hạn, lưu cạnh ảnh gốc:
+// product-images/abc.jpg -> product-images/variants/w320/abc.jpg.
+// Chạy sau mỗi lần ghi sản phẩm có ảnh mới, và theo kiểu lazy cho ảnh cũ (GET /api/products/{id}/image).
+@Service
+public class ProductImageVariantService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductImageVariantService.class);
+
+    @Autowired
+    private BlobStorageService blobStorageService;
+
+    @Autowired
+    private ProductBulkRepository productBulkRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Các chiều rộng (px) cần sinh, tăng dần
+    @Value("${app.images.variant-widths:160,320,640}")
+    private int[] variantWidths;
+
+    @Value("${app.images.variant-threads:2}")
+    private int variantThreads;
+
+    @Value("${app.images.variant-queue-capacity:200}")
+    private int variantQueueCapacity;
+
+    @Value("${app.images.jpeg-quality:0.8}")
+    private float jpegQuality;
+
+    // Giới hạn số điểm ảnh của ảnh gốc được giải mã (mặc định 25 MP, khoảng 100 MB trên heap)
+    @Value("${app.images.max-pixels:25000000}")
+    private long maxPixels;
+
+    // Sản phẩm đang chờ/đang sinh, tránh xếp hàng trùng khi nhiều request cùng kích hoạt
+    private final Set<UUID> inFlight = ConcurrentHashMap.newKeySet();
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        variantWidths = Arrays.stream(variantWidths).sorted().distinct().toArray();
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                variantThreads, variantThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(variantQueueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-variant-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        for (Product product : event.getUpserted()) {
+            if (product.getImageUrl() != null && !hasCurrentVariants(product)) {
+                schedule(product.getId(), product.getImageUrl());
+            }
+        }
+    }
+
+    // URL ảnh phù hợp với chiều rộng yêu cầu: biến thể nhỏ nhất >= width, nếu chưa có thì ảnh gốc
+    // (đồng thời xếp hàng sinh biến thể cho lần sau). Trả về null nếu sản phẩm không có ảnh.
+    public String resolveImageUrl(Product product, int width) {
+        if (product.getImageUrl() == null || product.getImageUrl().isEmpty()) {
+            return null;
+        }
+        if (!hasCurrentVariants(product)) {
+            schedule(product.getId(), product.getImageUrl());
+            return product.getImageUrl();
+        }
+        for (int variantWidth : variantWidths) {
+            if (variantWidth >= width) {
+                return product.getImageVariants().get(variantKey(variantWidth));
+            }
+        }
+        return product.getImageUrl();
+    }
+
+    // Biến thể khớp với ảnh gốc hiện tại (đường dẫn biến thể suy ra từ ảnh gốc)
+    public boolean hasCurrentVariants(Product product) {
+        Map<String, String> variants = product.getImageVariants();
+        if (variants == null) {
+            return false;
+        }
+        String objectName = blobStorageService.objectName(product.getImageUrl());
+        if (objectName == null) {
+            // Ảnh ngoài kho lưu trữ (URL tự nhập): không sinh được biến thể
+            return true;
+        }
+        for (int width : variantWidths) {
+            String url = variants.get(variantKey(width));
+            if (url == null || !url.startsWith(blobStorageService.publicUrl(variantPrefix(objectName, width) + "."))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void schedule(UUID productId, String imageUrl) {
+        if (blobStorageService.objectName(imageUrl) == null || !inFlight.add(productId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(productId, imageUrl);
+                } catch (Exception e) {
+                    logger.atWarn().addKeyValue("productId", productId).addKeyValue("imageUrl", imageUrl)
+                            .setCause(e).log("Không sinh được ảnh thu nhỏ");
+                } finally {
+                    inFlight.remove(productId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Hàng đợi đầy: bỏ qua, lần đọc sau sẽ xếp hàng lại
+            inFlight.remove(productId);
+        }
+    }
+
+    private void generate(UUID productId, String imageUrl) throws IOException {
+        // Ảnh lưu theo nội dung: sản phẩm khác dùng chung ảnh thì dùng lại biến thể đã sinh
+        for (Product other : productRepository.findTop5ByImageUrlAndImageVariantsIsNotNull(imageUrl)) {
+            if (hasCurrentVariants(other)) {
+                saveVariants(productId, imageUrl, other.getImageVariants());
+                return;
+            }
+        }
+
+        BufferedImage original;
+        try (InputStream in = blobStorageService.openFile(imageUrl)) {
+            original = decode(in, imageUrl);
+        }
+        if (original == null) {
+            return;
+        }
+        String objectName = blobStorageService.objectName(imageUrl);
+        boolean png = original.getColorModel().hasAlpha();
+        String extension = png ? ".png" : ".jpg";
+        String contentType = png ? "image/png" : "image/jpeg";
+
+        Map<String, String> variants = new LinkedHashMap<>();
+        for (int width : variantWidths) {
+            // Ảnh gốc nhỏ hơn thì giữ kích thước, chỉ nén lại
+            BufferedImage resized = resize(original, Math.min(width, original.getWidth()), png);
+            byte[] data = png ? encodePng(resized) : encodeJpeg(resized);
+            String url = blobStorageService.uploadBytes(variantPrefix(objectName, width) + extension, data, contentType);
+            variants.put(variantKey(width), url);
+        }
+
+        saveVariants(productId, imageUrl, variants);
+        logger.atDebug().addKeyValue("productId", productId).addKeyValue("variants", variants.size())
+                .log("Đã sinh ảnh thu nhỏ");
+    }
+
+    // Đọc kích thước từ header trước khi giải mã: PNG nén cao vài trăm KB có thể bung ra hàng GB trên heap.
+    // Trả về null nếu định dạng không hỗ trợ hoặc ảnh vượt giới hạn điểm ảnh.
+    private BufferedImage decode(InputStream in, String imageUrl) throws IOException {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = stream == null ? null : ImageIO.getImageReaders(stream);
+            if (readers == null || !readers.hasNext()) {
+                logger.atDebug().addKeyValue("imageUrl", imageUrl).log("Định dạng ảnh không hỗ trợ, bỏ qua");
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    logger.atWarn().addKeyValue("imageUrl", imageUrl).addKeyValue("pixels", pixels)
+                            .addKeyValue("maxPixels", maxPixels).log("Ảnh quá lớn, bỏ qua sinh ảnh thu nhỏ");
+                    return null;
+                }
+                return reader.read(0, reader.getDefaultReadParam());
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Biến thể là dữ liệu dẫn xuất: client vẫn có ảnh qua /api/products/{id}/image nên không đổi phiên bản catalog (ETag)
+    private void saveVariants(UUID productId, String imageUrl, Map<String, String> variants) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!productBulkRepository.updateImageVariants(productId, imageUrl, variants)) {
+                return; // Sản phẩm đã đổi ảnh hoặc bị xóa trong lúc sinh
+            }
+            Cache productCache = cacheManager.getCache(CacheConfig.PRODUCTS);
+            if (productCache != null) {
+                productCache.evict(productId);
+            }
+            eventPublisher.publishEvent(ProductChangedEvent.upserted(productRepository.findAllById(List.of(productId))));
+        });
+    }
+
+    // Thu nhỏ từng bước một nửa rồi mới tới kích thước đích: nhanh và ít răng cưa hơn thu nhỏ một lần
+    private static BufferedImage resize(BufferedImage source, int targetWidth, boolean keepAlpha) {
+        int targetHeight = Math.max(1, (int) Math.round((double) source.getHeight() * targetWidth / source.getWidth()));
+        int type = keepAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static String variantKey(int width) {
+        return "w" + width;
+    }
+
+    // product-images/abc.jpg -> product-images/variants/w320/abc (chưa có phần mở rộng)
+    private static String variantPrefix(String objectName, int width) {
+        int slash = objectName.lastIndexOf('/');
+        String folder = slash >= 0 ? objectName.substring(0, slash + 1) : "";
+        String fileName = objectName.substring(slash + 1);
+        int dot = fileName.lastIndexOf('.');
+        String baseName = dot > 0 ? fileName.substring(0, dot) : fileName;
+        return folder + "variants/" + variantKey(width) + "/" + baseName;
+    }
+}
@@ -0,0 +1,300 @@
+package com.example.workflow.service;
+
+import com.example.workflow.dto.ImportJobDTO;
+import com.example.workflow.dto.ImportResultDTO;
+import com.example.workflow.model.Product;
+import com.example.workflow.model.ProductImportJob;
+import com.example.workflow.model.ProductImportJobError;
+import com.example.workflow.repository.ProductImportJobErrorRepository;
+import com.example.workflow.repository.ProductImportJobRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Chạy import Excel nền trên một hàng đợi có giới hạn.
+// Mỗi chunk (sản phẩm + lỗi của chunk + tiến độ job) được commit trong cùng một transaction,
+// nên khi lỗi có thể chạy tiếp từ dòng đã commit cuối cùng mà không import trùng.
+@Service
+public class ProductImportJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductImportJobService.class);
+
+    @Autowired
+    private ProductImportJobRepository jobRepository;
+
+    @Autowired
+    private ProductImportJobErrorRepository jobErrorRepository;
+
+    @Autowired
+    private ProductBulkWriteService productBulkWriteService;
+
+    @Autowired
+    private ProductExcelImporter productExcelImporter;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Thư mục giữ file upload cho tới khi job hoàn tất
+    @Value("${app.import.upload-dir:${java.io.tmpdir}/product-imports}")
+    private String uploadDir;
+
+    // Số job chạy song song; mỗi job chỉ giữ một kết nối DB tại một thời điểm
+    @Value("${app.import.job-threads:1}")
+    private int jobThreads;
+
+    @Value("${app.import.job-queue-capacity:10}")
+    private int jobQueueCapacity;
+
+    // Số lần thử (kể cả lần đầu) trước khi đánh dấu job FAILED
+    @Value("${app.import.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.import.retry-backoff-ms:5000}")
+    private long retryBackoffMs;
+
+    @Value("${app.import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                jobThreads, jobThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(jobQueueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "product-import-job-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Lưu file, tạo job và trả về ngay; việc import chạy nền
+    public ImportJobDTO submit(MultipartFile file) throws IOException {
+        Path directory = Paths.get(uploadDir);
+        Files.createDirectories(directory);
+        Path target = directory.resolve(UUID.randomUUID() + ".xlsx");
+        file.transferTo(target);
+
+        ProductImportJob job = new ProductImportJob();
+        job.setFileName(file.getOriginalFilename());
+        job.setFilePath(target.toString());
+        job = jobRepository.save(job);
+        try {
+            enqueue(job.getId());
+        } catch (RejectedExecutionException e) {
+            jobRepository.delete(job);
+            Files.deleteIfExists(target);
+            throw new IllegalStateException("Hàng đợi import đã đầy, vui lòng thử lại sau");
+        }
+        logger.atInfo().addKeyValue("jobId", job.getId()).addKeyValue("fileName", job.getFileName())
+                .log("Đã nhận lượt import");
+        return toDTO(job, List.of());
+    }
+
+    // Chạy tiếp một job bị lỗi từ dòng đã commit cuối cùng
+    public ImportJobDTO resume(UUID jobId) {
+        ProductImportJob job = jobRepository.findById(jobId)
+                .orElseThrow(() -> new RuntimeException("Không tìm thấy lượt import với ID: " + jobId));
+        if (job.getStatus() != ProductImportJob.Status.FAILED) {
+            throw new IllegalArgumentException("Chỉ có thể chạy tiếp lượt import bị lỗi");
+        }
+        if (!Files.exists(Paths.get(job.getFilePath()))) {
+            throw new IllegalArgumentException("File import không còn tồn tại, vui lòng upload lại");
+        }
+        job.setStatus(ProductImportJob.Status.QUEUED);
+        job.setAttempts(0);
+        job.setErrorMessage(null);
+        job.setFinishedAt(null);
+        job = jobRepository.save(job);
+        try {
+            enqueue(job.getId());
+        } catch (RejectedExecutionException e) {
+            job.setStatus(ProductImportJob.Status.FAILED);
+            jobRepository.save(job);
+            throw new IllegalStateException("Hàng đợi import đã đầy, vui lòng thử lại sau");
+        }
+        return toDTO(job, List.of());
+    }
+
+    public ImportJobDTO getJob(UUID jobId) {
+        ProductImportJob job = jobRepository.findById(jobId)
+                .orElseThrow(() -> new RuntimeException("Không tìm thấy lượt import với ID: " + jobId));
+        return toDTO(job, jobErrorRepository.findTop100ByJobIdOrderByRowNumberAsc(jobId));
+    }
+
+    // Job còn QUEUED/RUNNING khi khởi động nghĩa là server đã dừng giữa chừng: xếp hàng chạy tiếp
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterrupted() {
+        List<ProductImportJob> jobs = jobRepository.findAllByStatusIn(
+                List.of(ProductImportJob.Status.QUEUED, ProductImportJob.Status.RUNNING));
+        for (ProductImportJob job : jobs) {
+            try {
+                enqueue(job.getId());
+                logger.atInfo().addKeyValue("jobId", job.getId())
+                        .addKeyValue("lastCommittedRow", job.getLastCommittedRow())
+                        .log("Chạy tiếp lượt import dở dang");
+            } catch (RejectedExecutionException e) {
+                markFailed(job.getId(), "Hàng đợi import đã đầy khi khởi động lại");
+            }
+        }
+    }
+
+    private void enqueue(UUID jobId) {
+        executor.execute(() -> run(jobId));
+    }
+
+    private void run(UUID jobId) {
+        while (true) {
+            ProductImportJob job = jobRepository.findById(jobId).orElse(null);
+            if (job == null) {
+                return;
+            }
+            job.setStatus(ProductImportJob.Status.RUNNING);
+            job.setAttempts(job.getAttempts() + 1);
+            if (job.getStartedAt() == null) {
+                job.setStartedAt(LocalDateTime.now());
+            }
+            job = jobRepository.save(job);
+
+            try {
+                productExcelImporter.process(Paths.get(job.getFilePath()), job.getLastCommittedRow(),
+                        (batch, errors, lastRow) -> commitChunk(jobId, batch, errors, lastRow));
+                complete(jobId);
+                return;
+            } catch (RuntimeException e) {
+                // File hỏng/sai định dạng thì thử lại cũng vô ích
+                boolean retryable = !(e instanceof IllegalArgumentException) && job.getAttempts() < maxAttempts;
+                logger.atWarn()
+                        .addKeyValue("jobId", jobId)
+                        .addKeyValue("attempt", job.getAttempts())
+                        .addKeyValue("retryable", retryable)
+                        .setCause(e)
+                        .log("Lượt import bị lỗi");
+                if (!retryable) {
+                    markFailed(jobId, e.getMessage());
+                    return;
+                }
+                try {
+                    Thread.sleep(retryBackoffMs * job.getAttempts());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    markFailed(jobId, "Import bị gián đoạn");
+                    return;
+                }
+            }
+        }
+    }
+
+    // Sản phẩm, lỗi của chunk và tiến độ job được commit cùng nhau.
+    // Sản phẩm trùng (danh mục, tên) được cập nhật nên chạy lại một chunk không sinh bản ghi trùng.
+    private void commitChunk(UUID jobId, List<Product> batch, List<ImportResultDTO.RowError> errors, int lastRow) {
+        transactionTemplate.executeWithoutResult(status -> {
+            ProductImportJob job = jobRepository.findById(jobId)
+                    .orElseThrow(() -> new IllegalStateException("Lượt import đã bị xóa: " + jobId));
+
+            List<Product> saved = batch.isEmpty() ? List.of() : productBulkWriteService.upsert(batch);
+
+            List<ProductImportJobError> jobErrors = new ArrayList<>();
+            for (ImportResultDTO.RowError error : errors) {
+                if (job.getRowsFailed() + jobErrors.size() >= maxReportedErrors) {
+                    break;
+                }
+                ProductImportJobError jobError = new ProductImportJobError();
+                jobError.setJobId(jobId);
+                jobError.setRowNumber(error.getRow());
+                jobError.setMessage(error.getMessage());
+                jobErrors.add(jobError);
+            }
+            jobErrorRepository.saveAll(jobErrors);
+
+            job.setRowsProcessed(job.getRowsProcessed() + batch.size() + errors.size());
+            job.setRowsImported(job.getRowsImported() + saved.size());
+            job.setRowsFailed(job.getRowsFailed() + errors.size());
+            job.setLastCommittedRow(lastRow);
+            jobRepository.save(job);
+        });
+    }
+
+    private void complete(UUID jobId) {
+        ProductImportJob job = jobRepository.findById(jobId).orElseThrow();
+        job.setStatus(ProductImportJob.Status.COMPLETED);
+        job.setErrorMessage(null);
+        job.setFinishedAt(LocalDateTime.now());
+        jobRepository.save(job);
+        try {
+            Files.deleteIfExists(Paths.get(job.getFilePath()));
+        } catch (IOException e) {
+            logger.atWarn().addKeyValue("jobId", jobId).setCause(e).log("Không xóa được file import");
+        }
+        logger.atInfo()
+                .addKeyValue("jobId", jobId)
+                .addKeyValue("rowsImported", job.getRowsImported())
+                .addKeyValue("rowsFailed", job.getRowsFailed())
+                .log("Lượt import hoàn tất");
+    }
+
+    private void markFailed(UUID jobId, String message) {
+        jobRepository.findById(jobId).ifPresent(job -> {
+            job.setStatus(ProductImportJob.Status.FAILED);
+            job.setErrorMessage(message != null && message.length() > 1000 ? message.substring(0, 1000) : message);
+            job.setFinishedAt(LocalDateTime.now());
+            jobRepository.save(job);
+        });
+    }
+
+    private ImportJobDTO toDTO(ProductImportJob job, List<ProductImportJobError> errors) {
+        ImportJobDTO dto = new ImportJobDTO();
+        dto.setId(job.getId());
+        dto.setFileName(job.getFileName());
+        dto.setStatus(job.getStatus().name());
+        dto.setRowsProcessed(job.getRowsProcessed());
+        dto.setRowsImported(job.getRowsImported());
+        dto.setRowsFailed(job.getRowsFailed());
+        dto.setLastCommittedRow(job.getLastCommittedRow());
+        dto.setAttempts(job.getAttempts());
+        dto.setErrorMessage(job.getErrorMessage());
+        dto.setCreatedAt(job.getCreatedAt());
+        dto.setStartedAt(job.getStartedAt());
+        dto.setFinishedAt(job.getFinishedAt());
+        if (job.getStartedAt() != null) {
+            LocalDateTime end = job.getFinishedAt() != null ? job.getFinishedAt() : LocalDateTime.now();
+            long millis = Duration.between(job.getStartedAt(), end).toMillis();
+            dto.setRowsPerSecond(millis > 0 ? job.getRowsProcessed() * 1000.0 / millis : 0);
+        }
+        dto.setErrors(errors.stream()
+                .map(error -> new ImportResultDTO.RowError(error.getRowNumber(), error.getMessage()))
+                .toList());
+        return dto;
+    }
+}
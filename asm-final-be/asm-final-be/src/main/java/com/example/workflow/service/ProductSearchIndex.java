@@ -0,0 +1,382 @@
+package com.example.workflow.service;
+
+import com.example.workflow.config.CacheConfig;
+import com.example.workflow.config.RemoteCacheInvalidationEvent;
+import com.example.workflow.model.Category;
+import com.example.workflow.model.Product;
+import com.example.workflow.repository.ProductRepository;
+import com.example.workflow.utils.VietnameseText;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Index đảo ngược trong bộ nhớ trên tên sản phẩm và tên danh mục (đã bỏ dấu).
+// Hỗ trợ khớp chính xác, tiền tố (gõ dở từ cuối) và sai 1 ký tự; truy vấn không chạm tới PostgreSQL.
+@Service
+public class ProductSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductSearchIndex.class);
+
+    public static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_LIMIT = 100;
+
+    // Trọng số theo trường và theo kiểu khớp
+    private static final float NAME_WEIGHT = 1.0f;
+    private static final float CATEGORY_WEIGHT = 0.5f;
+    private static final float EXACT_BOOST = 3.0f;
+    private static final float PREFIX_BOOST = 2.0f;
+    private static final float FUZZY_BOOST = 1.0f;
+
+    // Từ ngắn hơn thì không sửa lỗi chính tả (quá nhiều kết quả nhiễu)
+    private static final int MIN_FUZZY_LENGTH = 4;
+    // Giới hạn số từ được mở rộng từ một tiền tố để giữ độ trễ ổn định
+    private static final int MAX_PREFIX_EXPANSIONS = 256;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<UUID, IndexedProduct> documents = new HashMap<>();
+    // từ -> (id sản phẩm -> trọng số trường)
+    private final TreeMap<String, Map<UUID, Float>> postings = new TreeMap<>();
+    // biến thể xóa 1 ký tự -> các từ sinh ra nó (symmetric delete, khoảng cách 1)
+    private final Map<String, Set<String>> deletions = new HashMap<>();
+
+    // Khác null trong lúc rebuild: sự kiện tới trong lúc đọc DB được ghi lại để áp dụng lại lên dữ liệu vừa đọc
+    private List<Object> replayBuffer;
+
+    private Timer searchTimer;
+
+    @PostConstruct
+    void init() {
+        MeterRegistry registry = meterRegistry != null ? meterRegistry : Metrics.globalRegistry;
+        this.searchTimer = Timer.builder("product.search.duration")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+    }
+
+    // Dựng lại toàn bộ index khi khởi động; sau đó chỉ cập nhật tăng dần theo sự kiện
+    // Đọc DB ngoài khóa để tìm kiếm không bị chặn; sự kiện tới trong lúc đó được phát lại theo thứ tự
+    // sau khi nạp nên không bị dữ liệu đọc trước đó ghi đè
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        lock.writeLock().lock();
+        try {
+            replayBuffer = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        List<Product> products;
+        try {
+            products = productRepository.findAll();
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                replayBuffer = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            documents.clear();
+            postings.clear();
+            deletions.clear();
+            products.forEach(this::indexLocked);
+            List<Object> missed = replayBuffer;
+            replayBuffer = null;
+            for (Object event : missed) {
+                if (event instanceof ProductChangedEvent productEvent) {
+                    applyLocked(productEvent);
+                } else if (event instanceof CategoryChangedEvent categoryEvent) {
+                    applyLocked(categoryEvent);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.atInfo().addKeyValue("products", products.size()).log("Đã dựng index tìm kiếm sản phẩm");
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (replayBuffer != null) {
+                replayBuffer.add(event);
+            }
+            applyLocked(event);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (replayBuffer != null) {
+                replayBuffer.add(event);
+            }
+            applyLocked(event);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void applyLocked(ProductChangedEvent event) {
+        event.getDeletedIds().forEach(this::removeLocked);
+        for (Product product : event.getUpserted()) {
+            removeLocked(product.getId());
+            indexLocked(product);
+        }
+    }
+
+    private void applyLocked(CategoryChangedEvent event) {
+        Category category = event.getCategory();
+        List<Product> affected = new ArrayList<>();
+        for (IndexedProduct document : documents.values()) {
+            Category current = document.product().getCategory();
+            if (current != null && category.getId().equals(current.getId())) {
+                affected.add(document.product());
+            }
+        }
+        for (Product product : affected) {
+            // Không sửa bản sao cũ vì có thể đang được trả về cho một truy vấn khác
+            Product updated = ProductSnapshots.copyOf(product);
+            updated.setCategory(category);
+            removeLocked(updated.getId());
+            indexLocked(updated);
+        }
+    }
+
+    // Node khác đã ghi catalog: nạp lại đúng sản phẩm đó (hoặc dựng lại toàn bộ nếu không rõ key)
+    @EventListener
+    public void onRemoteInvalidation(RemoteCacheInvalidationEvent event) {
+        if (!CacheConfig.PRODUCTS.equals(event.getCacheName()) && !CacheConfig.CATEGORIES.equals(event.getCacheName())) {
+            return;
+        }
+        if (CacheConfig.PRODUCTS.equals(event.getCacheName()) && event.getKey() instanceof UUID productId) {
+            Optional<Product> product = productRepository.findById(productId);
+            onProductChanged(product
+                    .map(p -> ProductChangedEvent.upserted(List.of(p)))
+                    .orElseGet(() -> ProductChangedEvent.deleted(productId)));
+            return;
+        }
+        rebuild();
+    }
+
+    // Mọi từ trong truy vấn đều phải khớp; từ cuối được khớp theo tiền tố để hỗ trợ gợi ý khi đang gõ
+    public List<Product> search(String query, int limit) {
+        List<String> tokens = VietnameseText.tokenize(query);
+        if (tokens.isEmpty()) {
+            return List.of();
+        }
+        int size = limit <= 0 ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+        return searchTimer.record(() -> {
+            lock.readLock().lock();
+            try {
+                Map<UUID, Float> scores = null;
+                for (int i = 0; i < tokens.size(); i++) {
+                    Map<UUID, Float> tokenScores = matchToken(tokens.get(i), i == tokens.size() - 1);
+                    if (scores == null) {
+                        scores = tokenScores;
+                    } else {
+                        scores.keySet().retainAll(tokenScores.keySet());
+                        for (Map.Entry<UUID, Float> entry : scores.entrySet()) {
+                            entry.setValue(entry.getValue() + tokenScores.get(entry.getKey()));
+                        }
+                    }
+                    if (scores.isEmpty()) {
+                        return List.<Product>of();
+                    }
+                }
+                Map<UUID, Float> finalScores = scores;
+                return finalScores.keySet().stream()
+                        .map(documents::get)
+                        .sorted(Comparator.<IndexedProduct>comparingDouble(d -> -finalScores.get(d.product().getId()))
+                                .thenComparingInt(d -> d.foldedName().length())
+                                .thenComparing(IndexedProduct::foldedName))
+                        .limit(size)
+                        .map(IndexedProduct::product)
+                        .toList();
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    private Map<UUID, Float> matchToken(String token, boolean allowPrefix) {
+        Map<UUID, Float> result = new HashMap<>();
+        accumulate(result, postings.get(token), EXACT_BOOST);
+
+        if (allowPrefix) {
+            int expanded = 0;
+            for (Map.Entry<String, Map<UUID, Float>> entry
+                    : postings.subMap(token, false, token + Character.MAX_VALUE, false).entrySet()) {
+                accumulate(result, entry.getValue(), PREFIX_BOOST);
+                if (++expanded >= MAX_PREFIX_EXPANSIONS) {
+                    break;
+                }
+            }
+        }
+
+        if (token.length() >= MIN_FUZZY_LENGTH) {
+            for (String candidate : fuzzyCandidates(token)) {
+                accumulate(result, postings.get(candidate), FUZZY_BOOST);
+            }
+        }
+        return result;
+    }
+
+    // Các từ trong index cách token đúng 1 phép sửa (thêm, xóa, thay hoặc đảo 2 ký tự liền kề)
+    private Set<String> fuzzyCandidates(String token) {
+        Set<String> candidates = new HashSet<>();
+        // Từ trong index dài hơn token 1 ký tự
+        candidates.addAll(deletions.getOrDefault(token, Set.of()));
+        for (String variant : deleteVariants(token)) {
+            // Từ trong index ngắn hơn token 1 ký tự
+            if (postings.containsKey(variant)) {
+                candidates.add(variant);
+            }
+            // Từ cùng độ dài có chung một biến thể xóa
+            candidates.addAll(deletions.getOrDefault(variant, Set.of()));
+        }
+        candidates.remove(token);
+        candidates.removeIf(candidate -> editDistance(token, candidate) > 1);
+        return candidates;
+    }
+
+    private static void accumulate(Map<UUID, Float> result, Map<UUID, Float> posting, float boost) {
+        if (posting == null) {
+            return;
+        }
+        for (Map.Entry<UUID, Float> entry : posting.entrySet()) {
+            result.merge(entry.getKey(), entry.getValue() * boost, Math::max);
+        }
+    }
+
+    private void indexLocked(Product product) {
+        if (product.getId() == null) {
+            return;
+        }
+        Product snapshot = ProductSnapshots.copyOf(product);
+        Map<String, Float> termWeights = new HashMap<>();
+        for (String term : VietnameseText.tokenize(snapshot.getName())) {
+            termWeights.merge(term, NAME_WEIGHT, Math::max);
+        }
+        if (snapshot.getCategory() != null) {
+            for (String term : VietnameseText.tokenize(snapshot.getCategory().getName())) {
+                termWeights.merge(term, CATEGORY_WEIGHT, Math::max);
+            }
+        }
+        for (Map.Entry<String, Float> entry : termWeights.entrySet()) {
+            String term = entry.getKey();
+            Map<UUID, Float> posting = postings.computeIfAbsent(term, t -> {
+                addDeletions(t);
+                return new HashMap<>();
+            });
+            posting.put(snapshot.getId(), entry.getValue());
+        }
+        documents.put(snapshot.getId(), new IndexedProduct(snapshot, VietnameseText.fold(snapshot.getName()),
+                termWeights.keySet()));
+    }
+
+    private void removeLocked(UUID productId) {
+        IndexedProduct document = documents.remove(productId);
+        if (document == null) {
+            return;
+        }
+        for (String term : document.terms()) {
+            Map<UUID, Float> posting = postings.get(term);
+            if (posting == null) {
+                continue;
+            }
+            posting.remove(productId);
+            if (posting.isEmpty()) {
+                postings.remove(term);
+                removeDeletions(term);
+            }
+        }
+    }
+
+    private void addDeletions(String term) {
+        if (term.length() < MIN_FUZZY_LENGTH) {
+            return;
+        }
+        for (String variant : deleteVariants(term)) {
+            deletions.computeIfAbsent(variant, v -> new HashSet<>()).add(term);
+        }
+    }
+
+    private void removeDeletions(String term) {
+        if (term.length() < MIN_FUZZY_LENGTH) {
+            return;
+        }
+        for (String variant : deleteVariants(term)) {
+            Set<String> terms = deletions.get(variant);
+            if (terms != null) {
+                terms.remove(term);
+                if (terms.isEmpty()) {
+                    deletions.remove(variant);
+                }
+            }
+        }
+    }
+
+    private static Set<String> deleteVariants(String term) {
+        Set<String> variants = new HashSet<>();
+        for (int i = 0; i < term.length(); i++) {
+            variants.add(term.substring(0, i) + term.substring(i + 1));
+        }
+        return variants;
+    }
+
+    // Khoảng cách Damerau-Levenshtein (optimal string alignment)
+    private static int editDistance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    private record IndexedProduct(Product product, String foldedName, Set<String> terms) {
+    }
+}
@@ -1,33 +1,44 @@
 package com.example.workflow.service;
 
+import com.example.workflow.dto.ProductPageDTO;
+import com.example.workflow.dto.request.ProductListRequest;
 import com.example.workflow.model.Category;
 import com.example.workflow.model.Product;
 import com.example.workflow.repository.CategoryRepository;
 import com.example.workflow.repository.ProductRepository;
-import com.google.cloud.storage.Storage;
-import com.google.firebase.FirebaseApp;
-import com.google.firebase.cloud.StorageClient;
 import jakarta.persistence.EntityManager;
-import net.sf.jasperreports.engine.*;
-import net.sf.jasperreports.engine.data.JRXlsxDataSource;
-import net.sf.jasperreports.engine.design.JRDesignField;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
 public class ProductService {
 
+    private static final Logger logger = LoggerFactory.getLogger(ProductService.class);
+
+    private static final Set<String> SORTABLE_FIELDS = Set.of("createdAt", "price", "name");
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+
     @Autowired
     private ProductRepository productRepository;
 
@@ -35,25 +46,38 @@ public class ProductService {
     private CategoryRepository categoryRepository;
 
     @Autowired
-    private FirebaseApp firebaseApp;
+    private ContentAddressedBlobService contentAddressedBlobService;
 
     @Autowired
     private EntityManager entityManager;
 
+    @Autowired
+    private CatalogVersionService catalogVersionService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @Transactional
     public Product createProduct(Product product, UUID categoryId) {
         Category category = categoryRepository.findById(categoryId)
                 .orElseThrow(() -> new RuntimeException("Danh mục không tồn tại với ID: " + categoryId));
         product.setCategory(category);
         product.setCreatedAt(LocalDateTime.now());
-        return productRepository.save(product);
+        checkNameAvailable(categoryId, product.getName());
+        Product saved = saveAndFlush(product);
+        catalogVersionService.markChanged();
+        eventPublisher.publishEvent(ProductChangedEvent.upserted(List.of(saved)));
+        return saved;
     }
 
+    // Sửa trên bản ghi đọc từ DB, không sửa trực tiếp đối tượng đang nằm trong cache
     @Transactional
     public Product updateProduct(UUID productId, String name, UUID categoryId, BigDecimal price, Integer stock, String imageUrl) {
-        Product product = productRepository.findById(productId)
+        Product product = productRepository.findByIdForUpdate(productId)
                 .orElseThrow(() -> new RuntimeException("Sản phẩm không tồn tại với ID: " + productId));
 
+        String oldName = product.getName();
+        UUID oldCategoryId = product.getCategory().getId();
         if (name != null && !name.trim().isEmpty()) {
             product.setName(name);
         }
@@ -62,156 +86,156 @@ public class ProductService {
                     .orElseThrow(() -> new RuntimeException("Danh mục không tồn tại với ID: " + categoryId));
             product.setCategory(category);
         }
+        if (!product.getName().equals(oldName) || !product.getCategory().getId().equals(oldCategoryId)) {
+            checkNameAvailable(product.getCategory().getId(), product.getName());
+        }
         if (price != null && price.compareTo(BigDecimal.ZERO) > 0) {
             product.setPrice(price);
         }
         if (stock != null && stock >= 0) {
             product.setStock(stock);
         }
-        if (imageUrl != null) {
+        String oldImageUrl = null;
+        Map<String, String> oldImageVariants = null;
+        if (imageUrl != null && !imageUrl.equals(product.getImageUrl())) {
+            oldImageUrl = product.getImageUrl();
+            oldImageVariants = product.getImageVariants();
             product.setImageUrl(imageUrl);
+            product.setImageVariants(null); // Biến thể của ảnh cũ, sẽ được sinh lại nền
         }
 
-        return productRepository.save(product);
+        Product saved = saveAndFlush(product); // Flush để countByImageUrl thấy URL mới
+        if (oldImageUrl != null) {
+            contentAddressedBlobService.releaseIfUnused(oldImageUrl,
+                    oldImageVariants == null ? null : oldImageVariants.values());
+        }
+        catalogVersionService.markChanged();
+        eventPublisher.publishEvent(ProductChangedEvent.upserted(List.of(saved)));
+        return saved;
     }
 
     @Transactional
     public void deleteProduct(UUID productId) {
-        Product product = productRepository.findById(productId)
+        // Đọc thẳng DB và khóa dòng như updateProduct: bản trong cache có thể cũ (version, imageVariants)
+        Product product = productRepository.findByIdForUpdate(productId)
                 .orElseThrow(() -> new RuntimeException("Sản phẩm không tồn tại với ID: " + productId));
 
-        // Xóa ảnh trên Firebase Storage nếu có
-        if (product.getImageUrl() != null && !product.getImageUrl().isEmpty()) {
-            Storage storage = StorageClient.getInstance(firebaseApp).bucket().getStorage();
-            String filePath = extractFilePathFromUrl(product.getImageUrl());
-            storage.delete(firebaseApp.getOptions().getStorageBucket(), filePath);
+        productRepository.delete(product);
+        productRepository.flush();
+
+        // Xếp hàng xóa ảnh trên kho lưu trữ (outbox) nếu không còn sản phẩm nào dùng chung
+        contentAddressedBlobService.releaseIfUnused(product.getImageUrl(),
+                product.getImageVariants() == null ? null : product.getImageVariants().values());
+        catalogVersionService.markChanged();
+        eventPublisher.publishEvent(ProductChangedEvent.deleted(productId));
+    }
+
+    // Tên sản phẩm là duy nhất trong một danh mục (khóa tự nhiên của nhập Excel)
+    private void checkNameAvailable(UUID categoryId, String name) {
+        if (productRepository.existsByCategory_IdAndName(categoryId, name)) {
+            throw new DuplicateKeyException("Danh mục đã có sản phẩm tên: " + name);
         }
+    }
 
-        productRepository.delete(product);
+    // Hai request cùng tạo một tên vượt qua kiểm tra trước: lỗi unique index được đổi thành thông báo rõ ràng
+    private Product saveAndFlush(Product product) {
+        try {
+            Product saved = productRepository.save(product);
+            productRepository.flush();
+            return saved;
+        } catch (DataIntegrityViolationException e) {
+            throw new DuplicateKeyException("Danh mục đã có sản phẩm tên: " + product.getName(), e);
+        }
     }
 
     public List<Product> getAllProducts() {
         return productRepository.findAll();
     }
 
-    public Product getProductById(UUID productId) {
-        return productRepository.findById(productId)
-                .orElseThrow(() -> new RuntimeException("Product not found"));
-    }
+    // Danh sách sản phẩm phân trang theo keyset (cursor) kèm bộ lọc.
+    // Mỗi trang là một truy vấn theo index (cột sắp xếp, id) nên trang 1000 tốn như trang 1.
+    public ProductPageDTO listProducts(ProductListRequest request) {
+        String sort = request.getSort() == null ? "createdAt" : request.getSort();
+        if (!SORTABLE_FIELDS.contains(sort)) {
+            throw new IllegalArgumentException("Kiểu sắp xếp không hợp lệ: " + sort);
+        }
+        boolean ascending = "asc".equalsIgnoreCase(request.getDirection());
+        String direction = ascending ? "asc" : "desc";
+        int limit = request.getLimit() == null ? DEFAULT_PAGE_SIZE
+                : Math.max(1, Math.min(request.getLimit(), MAX_PAGE_SIZE));
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Product> query = cb.createQuery(Product.class);
+        Root<Product> root = query.from(Product.class);
+        root.fetch("category", JoinType.INNER); // Lấy category trong cùng truy vấn, tránh N+1
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (request.getCategoryId() != null) {
+            predicates.add(cb.equal(root.get("category").get("id"), request.getCategoryId()));
+        }
+        if (request.getMinPrice() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(root.get("price"), request.getMinPrice()));
+        }
+        if (request.getMaxPrice() != null) {
+            predicates.add(cb.lessThanOrEqualTo(root.get("price"), request.getMaxPrice()));
+        }
+        if (request.getInStock() != null) {
+            predicates.add(request.getInStock()
+                    ? cb.greaterThan(root.get("stock"), 0)
+                    : cb.lessThanOrEqualTo(root.get("stock"), 0));
+        }
+        if (request.getCursor() != null && !request.getCursor().isEmpty()) {
+            ProductCursor cursor = ProductCursor.decode(request.getCursor(), sort, direction);
+            predicates.add(keysetPredicate(cb, root, sort, ascending, cursor));
+        }
 
-    // Hàm hỗ trợ trích xuất file path từ URL Firebase Storage
-    private String extractFilePathFromUrl(String imageUrl) {
-        String bucketPrefix = "https://storage.googleapis.com/" + firebaseApp.getOptions().getStorageBucket() + "/";
-        return imageUrl.replace(bucketPrefix, "");
+        query.select(root)
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(ascending ? cb.asc(root.get(sort)) : cb.desc(root.get(sort)),
+                        ascending ? cb.asc(root.get("id")) : cb.desc(root.get("id")));
+
+        // Lấy dư một dòng để biết còn trang sau hay không
+        List<Product> rows = entityManager.createQuery(query)
+                .setMaxResults(limit + 1)
+                .getResultList();
+
+        String nextCursor = null;
+        if (rows.size() > limit) {
+            rows = new ArrayList<>(rows.subList(0, limit));
+            Product last = rows.get(limit - 1);
+            nextCursor = new ProductCursor(sort, direction, sortValue(last, sort), last.getId()).encode();
+        }
+        return new ProductPageDTO(rows, nextCursor, limit);
     }
 
-    @Transactional
-    public List<Product> importProductsFromExcel(MultipartFile file) throws IOException, JRException {
-        List<Product> products = new ArrayList<>();
-
-        try (ByteArrayInputStream inputStream = new ByteArrayInputStream(file.getBytes())) {
-            System.out.println("Starting to process file: " + file.getOriginalFilename());
-
-            InputStream jrxmlInputStream = getClass().getResourceAsStream("/reports/product_import_template.jrxml");
-            if (jrxmlInputStream == null) {
-                throw new IllegalStateException("Template 'product_import_template.jrxml' not found in resources/reports/");
-            }
-            JasperReport jasperReport = JasperCompileManager.compileReport(jrxmlInputStream);
-
-            JRXlsxDataSource dataSource = new JRXlsxDataSource(inputStream);
-            dataSource.setUseFirstRowAsHeader(true);
-            dataSource.setColumnNames(new String[]{"name", "category_id", "price", "stock", "imageUrl"});
-
-            JRDesignField nameField = new JRDesignField();
-            nameField.setName("name");
-            nameField.setValueClass(String.class);
-
-            JRDesignField categoryIdField = new JRDesignField();
-            categoryIdField.setName("category_id");
-            categoryIdField.setValueClass(String.class);
-
-            JRDesignField priceField = new JRDesignField();
-            priceField.setName("price");
-            priceField.setValueClass(BigDecimal.class);
-
-            JRDesignField stockField = new JRDesignField();
-            stockField.setName("stock");
-            stockField.setValueClass(Integer.class);
-
-            JRDesignField imageUrlField = new JRDesignField();
-            imageUrlField.setName("imageUrl");
-            imageUrlField.setValueClass(String.class);
-
-            int rowNum = 2;
-            while (dataSource.next()) {
-                System.out.println("Processing row: " + rowNum);
-
-                Product product = new Product();
-
-                try {
-                    // Thử trích xuất name
-                    Object nameObj = dataSource.getFieldValue(nameField);
-                    String name = (nameObj != null) ? nameObj.toString() : null;
-                    System.out.println("name value: " + name);
-                    if (name == null || name.trim().isEmpty()) {
-                        System.out.println("Encountered empty or null name at row " + rowNum + ", stopping import.");
-                        break; // Thoát nếu name trống
-                    }
-                    product.setName(name);
-
-                    Object categoryIdObj = dataSource.getFieldValue(categoryIdField);
-                    String categoryIdStr = (categoryIdObj != null) ? categoryIdObj.toString() : null;
-                    System.out.println("category_id value: " + categoryIdStr);
-                    if (categoryIdStr == null) {
-                        throw new IllegalArgumentException("Category ID không hợp lệ tại hàng " + rowNum);
-                    }
-                    UUID categoryId = UUID.fromString(categoryIdStr);
-                    Category category = categoryRepository.findById(categoryId)
-                            .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy danh mục với ID " + categoryId));
-                    product.setCategory(category);
-
-                    Object priceObj = dataSource.getFieldValue(priceField);
-                    BigDecimal price = (priceObj != null) ? (BigDecimal) priceObj : null;
-                    System.out.println("price value: " + price);
-                    if (price == null || price.compareTo(BigDecimal.ZERO) <= 0) {
-                        throw new IllegalArgumentException("Giá sản phẩm phải lớn hơn 0 tại hàng " + rowNum);
-                    }
-                    product.setPrice(price);
-
-                    Object stockObj = dataSource.getFieldValue(stockField);
-                    Integer stock = (stockObj != null) ? (Integer) stockObj : null;
-                    System.out.println("stock value: " + stock);
-                    if (stock == null || stock < 0) {
-                        throw new IllegalArgumentException("Số lượng tồn kho không được âm tại hàng " + rowNum);
-                    }
-                    product.setStock(stock);
-
-                    Object imageUrlObj = dataSource.getFieldValue(imageUrlField);
-                    String imageUrl = (imageUrlObj != null) ? imageUrlObj.toString() : null;
-                    System.out.println("imageUrl value: " + imageUrl);
-                    if (imageUrl != null) {
-                        product.setImageUrl(imageUrl);
-                    }
-
-                    product.setCreatedAt(LocalDateTime.now());
-                    products.add(product);
-                } catch (JRException e) {
-                    if (e.getMessage().contains("Unable to get value for Excel field")) {
-                        System.out.println("Reached end of data at row " + rowNum + ", stopping import.");
-                        break; // Thoát khi gặp lỗi do hàng không tồn tại
-                    }
-                    throw e; // Ném lại lỗi khác nếu có
-                }
-
-                rowNum++;
-            }
-
-            System.out.println("Import completed, total products: " + products.size());
-            return productRepository.saveAll(products);
-        } catch (Exception e) {
-            System.err.println("Error during import: " + e.getMessage());
-            e.printStackTrace();
-            throw e;
+    // (sort, id) > (giá trị, id) của dòng cuối trang trước (hoặc < khi sắp xếp giảm dần).
+    // Dạng OR không dùng được làm cận của index (sort, id) nên thêm điều kiện sort >= giá trị (<= khi giảm dần):
+    // PostgreSQL bắt đầu quét index từ cursor, chỉ lọc bỏ vài dòng trùng giá trị đã trả ở trang trước.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Predicate keysetPredicate(CriteriaBuilder cb, Root<Product> root, String sort, boolean ascending, ProductCursor cursor) {
+        Expression field = root.get(sort);
+        Comparable value = cursor.getValue();
+        Expression<UUID> id = root.get("id");
+        if (ascending) {
+            return cb.and(cb.greaterThanOrEqualTo(field, value),
+                    cb.or(cb.greaterThan(field, value),
+                            cb.and(cb.equal(field, value), cb.greaterThan(id, cursor.getId()))));
         }
+        return cb.and(cb.lessThanOrEqualTo(field, value),
+                cb.or(cb.lessThan(field, value),
+                        cb.and(cb.equal(field, value), cb.lessThan(id, cursor.getId()))));
+    }
+
+    private Comparable<?> sortValue(Product product, String sort) {
+        return switch (sort) {
+            case "price" -> product.getPrice();
+            case "name" -> product.getName();
+            default -> product.getCreatedAt();
+        };
+    }
+
+    public Product getProductById(UUID productId) {
+        return productRepository.findById(productId)
+                .orElseThrow(() -> new RuntimeException("Product not found"));
     }
 }
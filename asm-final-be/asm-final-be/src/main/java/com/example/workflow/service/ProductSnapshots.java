@@ -0,0 +1,35 @@
+package com.example.workflow.service;
+
+import com.example.workflow.model.Category;
+import com.example.workflow.model.Product;
+
+import java.util.LinkedHashMap;
+
+// Bản sao tách khỏi persistence context cho các index trong bộ nhớ,
+// để dữ liệu trả về không bị thay đổi ngoài ý muốn khi entity gốc được sửa
+final class ProductSnapshots {
+
+    private ProductSnapshots() {
+    }
+
+    static Product copyOf(Product product) {
+        Product copy = new Product();
+        copy.setId(product.getId());
+        copy.setName(product.getName());
+        copy.setPrice(product.getPrice());
+        copy.setStock(product.getStock());
+        copy.setImageUrl(product.getImageUrl());
+        copy.setImageVariants(product.getImageVariants() == null ? null : new LinkedHashMap<>(product.getImageVariants()));
+        copy.setCreatedAt(product.getCreatedAt());
+        copy.setVersion(product.getVersion());
+        Category category = product.getCategory();
+        if (category != null) {
+            Category categoryCopy = new Category();
+            categoryCopy.setId(category.getId());
+            categoryCopy.setName(category.getName());
+            categoryCopy.setDescription(category.getDescription());
+            copy.setCategory(categoryCopy);
+        }
+        return copy;
+    }
+}
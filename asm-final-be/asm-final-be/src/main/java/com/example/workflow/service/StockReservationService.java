@@ -0,0 +1,256 @@
+package com.example.workflow.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+// Giữ chỗ tồn kho mềm theo dòng giỏ hàng: mỗi (user, sản phẩm) giữ đúng số lượng đang có trong giỏ,
+// tổng giữ chỗ của một sản phẩm nằm trong một bộ đếm CAS nên không cần khóa dòng trong DB.
+// Giữ chỗ hết hạn sau ttl-ms kể từ lần sửa giỏ cuối và được trả lại bởi timer wheel trong bộ nhớ.
+// Lúc thanh toán, đơn hàng trừ kho thật (ProductBulkWriteService.decrementStock), tồn kho còn lại phải đủ
+// cho giữ chỗ của user khác (ensureOthersCovered), rồi giữ chỗ của đơn được gỡ.
+// Giữ chỗ được đặt trên cả hai đường giỏ hàng (CartStore trong bộ nhớ và ghi thẳng DB).
+// Sổ giữ chỗ nằm trong bộ nhớ của node: chạy nhiều node thì mỗi node chỉ thấy giữ chỗ của mình,
+// việc trừ kho có điều kiện lúc thanh toán vẫn đảm bảo không bán quá tồn kho.
+@Service
+public class StockReservationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockReservationService.class);
+
+    @Value("${app.cart.reservation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.cart.reservation.ttl-ms:900000}")
+    private long ttlMillis;
+
+    // Độ phân giải của timer wheel: giữ chỗ được trả chậm nhất một tick sau khi hết hạn
+    @Value("${app.cart.reservation.tick-ms:1000}")
+    private long tickMillis;
+
+    @Value("${app.cart.reservation.wheel-size:512}")
+    private int wheelSize;
+
+    private record HoldKey(UUID userId, UUID productId) {
+    }
+
+    // Mỗi lần đổi số lượng tạo Hold mới; mục cũ còn trong wheel bị bỏ qua vì không còn khớp với holds
+    private record Hold(HoldKey key, int quantity, long expiryTick) {
+    }
+
+    private final Map<HoldKey, Hold> holds = new ConcurrentHashMap<>();
+
+    // productId -> tổng số lượng đang được giữ
+    private final Map<UUID, AtomicInteger> reserved = new ConcurrentHashMap<>();
+
+    // Nguồn thời gian của timer wheel; test thay bằng đồng hồ giả để đẩy wheel đi từng tick
+    private LongSupplier clock = System::currentTimeMillis;
+
+    private Queue<Hold>[] wheel;
+    private long lastTick;
+    private ScheduledExecutorService timer;
+
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    void init() {
+        wheel = new Queue[Math.max(1, wheelSize)];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        lastTick = currentTick();
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-reservation-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        timer.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Đặt số lượng giữ chỗ của user cho sản phẩm (0 = bỏ giữ chỗ) và gia hạn thời gian giữ.
+    // Ném lỗi nếu tồn kho trừ đi phần người khác đang giữ không đủ; khi đó giữ chỗ cũ được giữ nguyên.
+    public void hold(UUID userId, UUID productId, int quantity, int stock) {
+        if (!enabled) {
+            if (quantity > stock) {
+                throw new RuntimeException("Insufficient stock");
+            }
+            return;
+        }
+        HoldKey key = new HoldKey(userId, productId);
+        long expiryTick = currentTick() + Math.max(1, (ttlMillis + tickMillis - 1) / tickMillis);
+        Hold[] created = new Hold[1];
+        holds.compute(key, (k, old) -> {
+            int delta = quantity - (old != null ? old.quantity() : 0);
+            if (!tryAdd(productId, delta, stock)) {
+                throw new RuntimeException("Insufficient stock");
+            }
+            if (quantity <= 0) {
+                return null;
+            }
+            created[0] = new Hold(k, quantity, expiryTick);
+            return created[0];
+        });
+        if (created[0] != null) {
+            schedule(created[0]);
+        }
+    }
+
+    // Đặt nhiều giữ chỗ cùng lúc: một sản phẩm không đủ hàng thì các giữ chỗ đã đặt trong lô được trả về như cũ
+    public void holdAll(UUID userId, Map<UUID, Integer> quantities, Map<UUID, Integer> stocks) {
+        Map<UUID, Integer> previous = new HashMap<>();
+        try {
+            for (Map.Entry<UUID, Integer> entry : quantities.entrySet()) {
+                UUID productId = entry.getKey();
+                previous.put(productId, heldQuantity(userId, productId));
+                hold(userId, productId, entry.getValue(), stocks.getOrDefault(productId, Integer.MAX_VALUE));
+            }
+        } catch (RuntimeException e) {
+            previous.forEach((productId, quantity) -> restore(userId, productId, quantity));
+            throw e;
+        }
+    }
+
+    // Gỡ phần giữ chỗ đã chuyển thành trừ kho thật sau khi đơn hàng commit
+    public void releaseCheckedOut(UUID userId, Map<UUID, Integer> checkedOut) {
+        if (!enabled) {
+            return;
+        }
+        checkedOut.forEach((productId, quantity) -> {
+            Hold[] remaining = new Hold[1];
+            holds.computeIfPresent(new HoldKey(userId, productId), (key, hold) -> {
+                int released = Math.min(hold.quantity(), quantity);
+                tryAdd(productId, -released, Integer.MAX_VALUE);
+                if (hold.quantity() == released) {
+                    return null;
+                }
+                // Giỏ đã được thêm sau lúc thanh toán: phần còn lại tiếp tục được giữ
+                remaining[0] = new Hold(key, hold.quantity() - released, hold.expiryTick());
+                return remaining[0];
+            });
+            if (remaining[0] != null) {
+                schedule(remaining[0]);
+            }
+        });
+    }
+
+    // Gọi trong transaction thanh toán sau khi trừ kho: phần còn lại phải đủ cho giữ chỗ của user khác,
+    // nếu không thì ném lỗi để đơn hàng rollback thay vì lấy mất hàng người khác đang giữ
+    public void ensureOthersCovered(UUID userId, UUID productId, int remainingStock) {
+        if (!enabled) {
+            return;
+        }
+        AtomicInteger counter = reserved.get(productId);
+        int others = (counter != null ? counter.get() : 0) - heldQuantity(userId, productId);
+        if (remainingStock < others) {
+            throw new RuntimeException("Insufficient stock");
+        }
+    }
+
+    // Số lượng người khác có thể thêm vào giỏ
+    public int available(UUID productId, int stock) {
+        AtomicInteger counter = reserved.get(productId);
+        return Math.max(0, stock - (counter != null ? counter.get() : 0));
+    }
+
+    private int heldQuantity(UUID userId, UUID productId) {
+        Hold hold = holds.get(new HoldKey(userId, productId));
+        return hold != null ? hold.quantity() : 0;
+    }
+
+    // Trả giữ chỗ về giá trị cũ, bỏ qua kiểm tra tồn kho vì phần đó vừa được giữ hợp lệ
+    private void restore(UUID userId, UUID productId, int quantity) {
+        if (enabled) {
+            hold(userId, productId, quantity, Integer.MAX_VALUE);
+        }
+    }
+
+    // Cộng delta vào bộ đếm của sản phẩm bằng CAS; chỉ kiểm tra tồn kho khi tăng
+    private boolean tryAdd(UUID productId, int delta, int stock) {
+        if (delta == 0) {
+            return true;
+        }
+        AtomicInteger counter = reserved.computeIfAbsent(productId, id -> new AtomicInteger());
+        while (true) {
+            int current = counter.get();
+            int next = current + delta;
+            if (delta > 0 && next > stock) {
+                return false;
+            }
+            if (counter.compareAndSet(current, Math.max(0, next))) {
+                return true;
+            }
+        }
+    }
+
+    private void schedule(Hold hold) {
+        wheel[(int) Math.floorMod(hold.expiryTick(), (long) wheel.length)].add(hold);
+    }
+
+    private long currentTick() {
+        return clock.getAsLong() / tickMillis;
+    }
+
+    // Chạy mỗi tick trên thread của timer: duyệt các ô từ lần chạy trước tới hiện tại
+    synchronized void advance() {
+        try {
+            long now = currentTick();
+            // Trễ hơn một vòng thì chỉ cần duyệt mỗi ô một lần
+            long from = Math.max(lastTick + 1, now - wheel.length + 1);
+            int released = 0;
+            for (long tick = from; tick <= now; tick++) {
+                released += expire(wheel[(int) Math.floorMod(tick, (long) wheel.length)], now);
+            }
+            lastTick = now;
+            if (released > 0) {
+                logger.atDebug().addKeyValue("released", released).log("Đã trả giữ chỗ tồn kho hết hạn");
+            }
+        } catch (RuntimeException e) {
+            logger.atWarn().setCause(e).log("Lỗi khi trả giữ chỗ tồn kho hết hạn");
+        }
+    }
+
+    private int expire(Queue<Hold> bucket, long now) {
+        List<Hold> due = new ArrayList<>();
+        Hold polled;
+        while ((polled = bucket.poll()) != null) {
+            due.add(polled);
+        }
+        int released = 0;
+        for (Hold hold : due) {
+            if (holds.get(hold.key()) != hold) {
+                continue; // Đã đổi số lượng, đã thanh toán hoặc đã bị xóa khỏi giỏ
+            }
+            if (hold.expiryTick() > now) {
+                bucket.add(hold); // Chưa tới vòng hết hạn
+            } else if (holds.remove(hold.key(), hold)) {
+                tryAdd(hold.key().productId(), -hold.quantity(), Integer.MAX_VALUE);
+                released++;
+            }
+        }
+        return released;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.workflow.service;
+
+import com.example.workflow.model.TokenRevocation;
+import com.example.workflow.repository.TokenRevocationRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Giữ mốc thu hồi token của từng user trong bộ nhớ để JwtAuthFilter không phải truy vấn DB.
+// Mốc được ghi xuống bảng user_token_revocations và đồng bộ định kỳ giữa các node.
+@Service
+public class TokenRevocationService {
+
+    @Autowired
+    private TokenRevocationRepository tokenRevocationRepository;
+
+    // userId -> thời điểm thu hồi (epoch millis)
+    private final Map<UUID, Long> revokedAt = new ConcurrentHashMap<>();
+
+    // Thu hồi mọi token đã phát hành cho user tính đến thời điểm hiện tại.
+    // Mốc trong bộ nhớ chỉ được ghi khi transaction của người gọi commit: thay đổi bị rollback thì user không bị đăng xuất.
+    @Transactional
+    public void revokeTokens(UUID userId) {
+        long now = System.currentTimeMillis();
+        TokenRevocation revocation = new TokenRevocation();
+        revocation.setUserId(userId);
+        revocation.setRevokedAt(now);
+        tokenRevocationRepository.save(revocation);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                revokedAt.merge(userId, now, Math::max);
+            }
+        });
+    }
+
+    // Token bị từ chối nếu được phát hành trước mốc thu hồi. iat chỉ có độ chính xác tới giây nên token phát hành
+    // trong cùng giây với mốc thu hồi cũng bị từ chối (kể cả token mới cấp ngay sau đó, người dùng chỉ cần đăng nhập lại)
+    public boolean isRevoked(UUID userId, Date issuedAt) {
+        Long revoked = revokedAt.get(userId);
+        if (revoked == null) {
+            return false;
+        }
+        if (issuedAt == null) {
+            return true;
+        }
+        return issuedAt.getTime() <= (revoked / 1000) * 1000;
+    }
+
+    // Đồng bộ mốc thu hồi từ DB; mốc cũ hơn thời hạn token thì không còn tác dụng và được dọn đi
+    @Scheduled(fixedDelayString = "${app.security.revocation.refresh-interval-ms:30000}")
+    @Transactional
+    public void refresh() {
+        long horizon = System.currentTimeMillis() - JwtService.TOKEN_VALIDITY_MILLIS;
+        for (TokenRevocation revocation : tokenRevocationRepository.findAllByRevokedAtGreaterThan(horizon)) {
+            revokedAt.merge(revocation.getUserId(), revocation.getRevokedAt(), Math::max);
+        }
+        revokedAt.values().removeIf(value -> value < horizon);
+        tokenRevocationRepository.deleteOlderThan(horizon);
+    }
+}
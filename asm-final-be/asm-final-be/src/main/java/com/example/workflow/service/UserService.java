@@ -1,41 +1,59 @@
 package com.example.workflow.service;
 import com.example.workflow.model.User;
 import com.example.workflow.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
 import java.util.UUID;
 
 @Service
 public class UserService implements UserDetailsService {
 
+    private static final Logger logger = LoggerFactory.getLogger(UserService.class);
+
     @Autowired
     private UserRepository userRepository;
 
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashingService passwordHashingService;
 
     @Autowired
     private EmailService emailService;
 
-    // Đăng ký người dùng mới với role mặc định là USER
-    @Transactional
-    public User registerUser(User user) {
-        if (userRepository.findByEmail(user.getEmail()).isPresent()) {
-            throw new RuntimeException("Email đã được sử dụng");
-        }
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    // Các thao tác có băm mật khẩu: BCrypt chạy trước, transaction chỉ mở cho phần ghi DB
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
+    // Hash giả để nhánh "không tìm thấy email" vẫn tốn đúng một lần BCrypt như nhánh sai mật khẩu
+    private volatile String dummyPasswordHash;
+
+    // Email được lưu và tra cứu ở dạng chuẩn hóa (trim + chữ thường) để khớp index lower(email)
+    public static String normalizeEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Đăng ký người dùng mới với role mặc định là USER.
+    // Không mở transaction: kiểm tra email và lần lưu là hai transaction ngắn, BCrypt chạy ở giữa khi không giữ kết nối.
+    // Hai request đăng ký cùng email vẫn bị chặn bởi unique index lower(email).
+    public User registerUser(User user) {
         if (user.getName() == null || user.getName().trim().isEmpty()) {
             throw new RuntimeException("Tên không được để trống");
         }
@@ -45,15 +63,25 @@ public class UserService implements UserDetailsService {
         if (user.getPassword() == null || user.getPassword().trim().isEmpty()) {
             throw new RuntimeException("Mật khẩu không được để trống");
         }
+        user.setEmail(normalizeEmail(user.getEmail()));
+        if (userRepository.findByNormalizedEmail(user.getEmail()).isPresent()) {
+            throw new RuntimeException("Email đã được sử dụng");
+        }
 
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
+        user.setPassword(passwordHashingService.encode(user.getPassword()));
         user.setRole(User.Role.USER);
         return userRepository.save(user);
     }
 
-    // Cập nhật thông tin người dùng
-    @Transactional
+    // Cập nhật thông tin người dùng. Mật khẩu mới được băm trước khi mở transaction.
     public User updateUser(UUID userId, User userDetails) {
+        String encodedPassword = userDetails.getPassword() != null && !userDetails.getPassword().trim().isEmpty()
+                ? passwordHashingService.encode(userDetails.getPassword())
+                : null;
+        return transactionTemplate.execute(status -> applyUserUpdate(userId, userDetails, encodedPassword));
+    }
+
+    private User applyUserUpdate(UUID userId, User userDetails, String encodedPassword) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy người dùng"));
         // Logic cập nhật giữ nguyên
@@ -61,20 +89,28 @@ public class UserService implements UserDetailsService {
             user.setName(userDetails.getName());
         }
         if (userDetails.getEmail() != null && !userDetails.getEmail().trim().isEmpty()) {
-            if (!userDetails.getEmail().equals(user.getEmail()) &&
-                    userRepository.findByEmail(userDetails.getEmail()).isPresent()) {
+            String email = normalizeEmail(userDetails.getEmail());
+            if (!email.equals(normalizeEmail(user.getEmail())) &&
+                    userRepository.findByNormalizedEmail(email).isPresent()) {
                 throw new RuntimeException("Email đã được sử dụng bởi người dùng khác");
             }
-            user.setEmail(userDetails.getEmail());
+            user.setEmail(email);
         }
-        if (userDetails.getPassword() != null && !userDetails.getPassword().trim().isEmpty()) {
-            user.setPassword(passwordEncoder.encode(userDetails.getPassword()));
+        boolean credentialsChanged = false;
+        if (encodedPassword != null) {
+            user.setPassword(encodedPassword);
+            credentialsChanged = true;
         }
         if (userDetails.getPhone() != null) {
             user.setPhone(userDetails.getPhone());
         }
-        if (userDetails.getRole() != null) {
+        if (userDetails.getRole() != null && userDetails.getRole() != user.getRole()) {
             user.setRole(userDetails.getRole());
+            credentialsChanged = true;
+        }
+        // Chỉ thu hồi token khi đổi mật khẩu hoặc role; subject của token là userId nên sửa hồ sơ không cần đăng nhập lại
+        if (credentialsChanged) {
+            tokenRevocationService.revokeTokens(userId);
         }
         return userRepository.save(user);
     }
@@ -85,6 +121,7 @@ public class UserService implements UserDetailsService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy người dùng"));
         userRepository.delete(user);
+        tokenRevocationService.revokeTokens(userId);
     }
 
     // Lấy tất cả người dùng
@@ -92,6 +129,39 @@ public class UserService implements UserDetailsService {
         return userRepository.findAll();
     }
 
+    // Xác thực đăng nhập bằng một truy vấn theo index email.
+    // Khi email không tồn tại vẫn so khớp với hash giả để thời gian phản hồi không tiết lộ email nào có tài khoản.
+    // Không mở transaction: truy vấn và lần lưu hash mới mỗi cái một transaction ngắn của repository,
+    // BCrypt chạy khi không giữ kết nối DB nào để đợt đăng nhập dồn dập không chiếm hết pool.
+    public Optional<User> authenticate(String email, String rawPassword) {
+        if (email == null || rawPassword == null) {
+            return Optional.empty();
+        }
+        Optional<User> user = userRepository.findByNormalizedEmail(normalizeEmail(email));
+        if (user.isEmpty()) {
+            passwordHashingService.matches(rawPassword, getDummyPasswordHash());
+            return Optional.empty();
+        }
+        if (!passwordHashingService.matches(rawPassword, user.get().getPassword())) {
+            return Optional.empty();
+        }
+        // Băm lại khi cost BCrypt trong cấu hình đã thay đổi
+        if (passwordHashingService.needsRehash(user.get().getPassword())) {
+            user.get().setPassword(passwordHashingService.encode(rawPassword));
+            userRepository.updatePassword(user.get().getId(), user.get().getPassword());
+        }
+        return user;
+    }
+
+    private String getDummyPasswordHash() {
+        String hash = dummyPasswordHash;
+        if (hash == null) {
+            hash = passwordHashingService.encode(UUID.randomUUID().toString());
+            dummyPasswordHash = hash;
+        }
+        return hash;
+    }
+
     // Quên mật khẩu
 //    @Transactional
 //    public void forgotPassword(String email) {
@@ -138,7 +208,7 @@ public class UserService implements UserDetailsService {
 
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
-        User user = userRepository.findByEmail(email)
+        User user = userRepository.findByNormalizedEmail(normalizeEmail(email))
                 .orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy người dùng với email: " + email));
         return org.springframework.security.core.userdetails.User
                 .withUsername(user.getEmail())
@@ -149,7 +219,7 @@ public class UserService implements UserDetailsService {
 
     @Transactional
     public void forgotPassword(String email) {
-        User user = userRepository.findByEmail(email)
+        User user = userRepository.findByNormalizedEmail(normalizeEmail(email))
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy người dùng với email: " + email));
 
         // Tạo token: email + thời gian tạo + một giá trị ngẫu nhiên
@@ -162,8 +232,8 @@ public class UserService implements UserDetailsService {
         // Tạo liên kết khôi phục
         String resetLink = "http://localhost:5173/reset-password?token=" + token + "&email=" + email;
 
-        // Log để kiểm tra
-        System.out.println("Generated Reset Link: " + resetLink);
+        // Không ghi link (chứa token) ra log
+        logger.atInfo().addKeyValue("userId", user.getId()).log("Đã tạo link khôi phục mật khẩu");
 
         // Gửi email
         try {
@@ -173,11 +243,8 @@ public class UserService implements UserDetailsService {
         }
     }
 
-    @Transactional
+    // Kiểm tra token và băm mật khẩu mới trước, transaction chỉ bao phần đọc và ghi user
     public void resetPassword(String token, String email, String newPassword) {
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("Không tìm thấy người dùng với email: " + email));
-
         // Giải mã token từ Base64
         String decodedToken;
         try {
@@ -214,7 +281,13 @@ public class UserService implements UserDetailsService {
         }
 
         // Đặt lại mật khẩu
-        user.setPassword(passwordEncoder.encode(newPassword));
-        userRepository.save(user);
+        String encodedPassword = passwordHashingService.encode(newPassword);
+        transactionTemplate.executeWithoutResult(status -> {
+            User user = userRepository.findByNormalizedEmail(normalizeEmail(email))
+                    .orElseThrow(() -> new RuntimeException("Không tìm thấy người dùng với email: " + email));
+            user.setPassword(encodedPassword);
+            userRepository.save(user);
+            tokenRevocationService.revokeTokens(user.getId());
+        });
     }
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package com.example.workflow.utils;
 
 public class Constants {
+    // Process definition key của quy trình đơn hàng
+    public static final String ORDER_PROCESS = "orderProcess";
     // Định nghĩa Task Definition Key cho task hủy đơn
     public static final String USER_TASK_CANCEL_ORDER = "Activity_Cancel_Order";
     public static final String USER_TASK_DELETE_ORDER = "Activity_Delete_Order"; // Thêm hằng số cho task xóa đơn
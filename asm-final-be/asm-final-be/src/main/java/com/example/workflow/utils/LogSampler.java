@@ -0,0 +1,27 @@
+package com.example.workflow.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Lấy mẫu log cho các thông điệp tần suất cao: chỉ ghi lần đầu và mỗi lần thứ `rate` sau đó.
+// Mỗi loại thông điệp dùng một instance riêng để tỉ lệ lấy mẫu độc lập nhau.
+public class LogSampler {
+
+    private final long rate;
+    private final AtomicLong counter = new AtomicLong();
+
+    public LogSampler(long rate) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate phải lớn hơn 0");
+        }
+        this.rate = rate;
+    }
+
+    public boolean sample() {
+        return counter.getAndIncrement() % rate == 0;
+    }
+
+    // Tổng số lần thông điệp xảy ra (kể cả các lần bị bỏ qua)
+    public long occurrences() {
+        return counter.get();
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.workflow.service;
+
+import com.example.workflow.config.DatabaseIndexInitializer;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+// PostgreSQL thật (Testcontainers) cho các benchmark: schema trong benchmark-schema.sql,
+// index tạo bằng chính DatabaseIndexInitializer. Mọi truy cập đi qua StatementCountingDataSource.
+final class BenchmarkDatabase implements AutoCloseable {
+
+    private final PostgreSQLContainer<?> container;
+    private final HikariDataSource pool;
+
+    final StatementCountingDataSource dataSource;
+    final JdbcTemplate jdbcTemplate;
+    final TransactionTemplate transactionTemplate;
+
+    private BenchmarkDatabase(PostgreSQLContainer<?> container) {
+        this.container = container;
+        pool = new HikariDataSource();
+        pool.setJdbcUrl(container.getJdbcUrl());
+        pool.setUsername(container.getUsername());
+        pool.setPassword(container.getPassword());
+        pool.setMaximumPoolSize(4);
+        dataSource = new StatementCountingDataSource(pool);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    static BenchmarkDatabase start() {
+        PostgreSQLContainer<?> container = new PostgreSQLContainer<>("postgres:16-alpine");
+        container.start();
+        BenchmarkDatabase database = new BenchmarkDatabase(container);
+        new ResourceDatabasePopulator(new ClassPathResource("benchmark-schema.sql")).execute(database.dataSource);
+        new DatabaseIndexInitializer(database.jdbcTemplate).createIndexes();
+        return database;
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+        container.stop();
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.workflow.service;
+
+import com.example.workflow.repository.CategoryRepository;
+import com.example.workflow.repository.CheckoutRepository;
+import com.example.workflow.repository.OrderRepository;
+import com.example.workflow.repository.ProductBulkRepository;
+import com.example.workflow.repository.ProductRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.camunda.bpm.engine.RuntimeService;
+import org.camunda.bpm.engine.TaskService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Đếm câu lệnh JDBC và đo p50/p99 của checkout.duration cho giỏ 1 dòng và 30 dòng trên PostgreSQL thật.
+// Chạy bằng: mvn test -Pbenchmark (cần Docker).
+// Phần ngoài DB (CartStore, giữ chỗ, outbox khởi động process) là mock: outbox thật thêm đúng một INSERT.
+@Tag("benchmark")
+@Testcontainers(disabledWithoutDocker = true)
+class CheckoutStatementsBenchmarkTest {
+
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 200;
+
+    // DELETE ... RETURNING giỏ, khóa dòng sản phẩm, UPDATE ... RETURNING trừ kho, INSERT đơn hàng, lô INSERT order_items
+    private static final long EXPECTED_STATEMENTS = 5;
+
+    private static BenchmarkDatabase database;
+
+    @BeforeAll
+    static void startDatabase() {
+        database = BenchmarkDatabase.start();
+    }
+
+    @AfterAll
+    static void stopDatabase() {
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    @Test
+    void statementsPerCheckoutDoNotGrowWithCartSize() {
+        Result single = run(1);
+        Result large = run(30);
+
+        System.out.printf("checkout 1 dòng: %d câu lệnh, p50=%.2fms p99=%.2fms%n",
+                single.statements(), single.p50Millis(), single.p99Millis());
+        System.out.printf("checkout 30 dòng: %d câu lệnh, p50=%.2fms p99=%.2fms%n",
+                large.statements(), large.p50Millis(), large.p99Millis());
+
+        assertEquals(single.statements(), large.statements());
+        assertEquals(EXPECTED_STATEMENTS, large.statements());
+    }
+
+    private Result run(int lines) {
+        UUID userId = insertUser();
+        List<UUID> productIds = insertProducts(lines);
+
+        OrderService warmup = orderService(new SimpleMeterRegistry());
+        for (int i = 0; i < WARMUP; i++) {
+            checkout(warmup, userId, productIds);
+        }
+
+        // Registry riêng cho lượt đo để p50/p99 không lẫn lượt khởi động
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        OrderService measured = orderService(registry);
+        TreeSet<Long> statements = new TreeSet<>();
+        for (int i = 0; i < ITERATIONS; i++) {
+            statements.add(checkout(measured, userId, productIds));
+        }
+        assertEquals(1, statements.size(), "Số câu lệnh thay đổi giữa các lần thanh toán: " + statements);
+
+        double p50 = 0;
+        double p99 = 0;
+        for (ValueAtPercentile value : registry.get("checkout.duration").timer().takeSnapshot().percentileValues()) {
+            if (value.percentile() == 0.5) {
+                p50 = value.value(TimeUnit.MILLISECONDS);
+            } else if (value.percentile() == 0.99) {
+                p99 = value.value(TimeUnit.MILLISECONDS);
+            }
+        }
+        return new Result(statements.first(), p50, p99);
+    }
+
+    // Nạp lại giỏ rồi thanh toán; chỉ đếm câu lệnh của createOrderFromCart
+    private long checkout(OrderService orderService, UUID userId, List<UUID> productIds) {
+        List<Object[]> rows = new ArrayList<>(productIds.size());
+        for (UUID productId : productIds) {
+            rows.add(new Object[]{UUID.randomUUID(), userId, productId, 1});
+        }
+        database.jdbcTemplate.batchUpdate(
+                "INSERT INTO carts (id, user_id, product_id, quantity) VALUES (?, ?, ?, ?)", rows);
+
+        database.dataSource.reset();
+        orderService.createOrderFromCart(userId);
+        return database.dataSource.executed();
+    }
+
+    @SuppressWarnings("unchecked")
+    private OrderService orderService(MeterRegistry registry) {
+        ProductBulkWriteService productBulkWriteService = new ProductBulkWriteService();
+        CheckoutRepository checkoutRepository = new CheckoutRepository(database.jdbcTemplate);
+        ReflectionTestUtils.setField(productBulkWriteService, "productBulkRepository",
+                new ProductBulkRepository(database.jdbcTemplate, database.dataSource));
+        ReflectionTestUtils.setField(productBulkWriteService, "checkoutRepository", checkoutRepository);
+        ReflectionTestUtils.setField(productBulkWriteService, "categoryRepository", mock(CategoryRepository.class));
+        ReflectionTestUtils.setField(productBulkWriteService, "productRepository", mock(ProductRepository.class));
+        ReflectionTestUtils.setField(productBulkWriteService, "cacheManager", mock(CacheManager.class));
+        ReflectionTestUtils.setField(productBulkWriteService, "catalogVersionService", mock(CatalogVersionService.class));
+        ReflectionTestUtils.setField(productBulkWriteService, "eventPublisher", mock(ApplicationEventPublisher.class));
+
+        ObjectProvider<MeterRegistry> meterRegistry = mock(ObjectProvider.class);
+        when(meterRegistry.getIfAvailable(any(Supplier.class))).thenReturn(registry);
+
+        OrderService orderService = new OrderService(
+                mock(OrderRepository.class),
+                mock(CartStore.class),
+                mock(StockReservationService.class),
+                productBulkWriteService,
+                mock(RuntimeService.class),
+                mock(TaskService.class),
+                database.dataSource,
+                checkoutRepository,
+                mock(ProcessStartDispatcher.class),
+                database.transactionTemplate,
+                meterRegistry);
+        orderService.initMetrics();
+        return orderService;
+    }
+
+    private UUID insertUser() {
+        UUID userId = UUID.randomUUID();
+        database.jdbcTemplate.update(
+                "INSERT INTO users (id, name, email, password, role) VALUES (?, ?, ?, ?, ?)",
+                userId, "Benchmark", userId + "@example.com", "x", "USER");
+        return userId;
+    }
+
+    private List<UUID> insertProducts(int count) {
+        UUID categoryId = UUID.randomUUID();
+        database.jdbcTemplate.update("INSERT INTO categories (id, name) VALUES (?, ?)", categoryId, "Benchmark " + categoryId);
+        Timestamp now = Timestamp.from(Instant.now());
+        List<UUID> productIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            UUID productId = UUID.randomUUID();
+            database.jdbcTemplate.update(
+                    "INSERT INTO products (id, name, category_id, price, stock, created_at) VALUES (?, ?, ?, 10000, 1000000, ?)",
+                    productId, "Sản phẩm " + i, categoryId, now);
+            productIds.add(productId);
+        }
+        return productIds;
+    }
+
+    private record Result(long statements, double p50Millis, double p99Millis) {
+    }
+}
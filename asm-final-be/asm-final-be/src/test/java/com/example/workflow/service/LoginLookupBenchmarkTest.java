@@ -0,0 +1,130 @@
+package com.example.workflow.service;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Tải đăng nhập trên PostgreSQL thật: tra cứu email như UserRepository.findByNormalizedEmail
+// với 1k, 100k và 1M user, đo p50/p99 và kiểm tra kế hoạch truy vấn dùng ux_users_email_lower.
+// BCrypt không phụ thuộc số user nên không nằm trong phép đo.
+// Chạy bằng: mvn test -Pbenchmark (cần Docker).
+@Tag("benchmark")
+@Testcontainers(disabledWithoutDocker = true)
+class LoginLookupBenchmarkTest {
+
+    private static final int[] USER_COUNTS = {1_000, 100_000, 1_000_000};
+    private static final int THREADS = 4;
+    private static final int LOOKUPS_PER_THREAD = 2_000;
+
+    // Cùng dạng câu lệnh Hibernate sinh cho "SELECT u FROM User u WHERE lower(u.email) = :email"
+    private static final String LOOKUP_SQL =
+            "SELECT id, name, email, password, phone, role FROM users WHERE lower(email) = ?";
+
+    private static BenchmarkDatabase database;
+
+    @BeforeAll
+    static void startDatabase() {
+        database = BenchmarkDatabase.start();
+    }
+
+    @AfterAll
+    static void stopDatabase() {
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    @Test
+    void loginLookupLatencyStaysFlatAsUsersGrow() throws Exception {
+        Map<Integer, double[]> results = new LinkedHashMap<>();
+        int seeded = 0;
+        for (int users : USER_COUNTS) {
+            seedUsers(seeded + 1, users);
+            seeded = users;
+
+            String plan = String.join("\n", database.jdbcTemplate.queryForList(
+                    "EXPLAIN " + LOOKUP_SQL.replace("?", "'user1@example.com'"), String.class));
+            assertTrue(plan.contains("ux_users_email_lower"),
+                    "Tra cứu email với " + users + " user không dùng index:\n" + plan);
+
+            results.put(users, measure(users));
+        }
+
+        results.forEach((users, millis) -> System.out.printf(
+                "đăng nhập với %d user: p50=%.3fms p99=%.3fms%n", users, millis[0], millis[1]));
+
+        // Index B-tree: 1000 lần số user chỉ thêm một hai tầng index, độ trễ gần như không đổi.
+        // Ngưỡng rộng để chịu nhiễu của máy chạy test, vẫn bắt được quét tuần tự (tăng theo số user).
+        double[] smallest = results.get(USER_COUNTS[0]);
+        double[] largest = results.get(USER_COUNTS[USER_COUNTS.length - 1]);
+        assertTrue(largest[0] <= smallest[0] * 3 + 1,
+                "p50 tăng theo số user: " + smallest[0] + "ms -> " + largest[0] + "ms");
+    }
+
+    private void seedUsers(int from, int to) {
+        database.jdbcTemplate.update(
+                "INSERT INTO users (id, name, email, password, role) "
+                        + "SELECT gen_random_uuid(), 'User ' || g, 'user' || g || '@example.com', 'x', 'USER' "
+                        + "FROM generate_series(?, ?) g", from, to);
+        database.jdbcTemplate.execute("ANALYZE users");
+    }
+
+    // Nhiều luồng tra cứu cùng lúc; một phần mười là email không tồn tại như đăng nhập sai
+    private double[] measure(int users) throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Timer timer = Timer.builder("login.lookup")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+                        String email = random.nextInt(10) == 0
+                                ? "missing" + i + "@example.com"
+                                : " User" + (random.nextInt(users) + 1) + "@Example.com ";
+                        long start = System.nanoTime();
+                        database.jdbcTemplate.queryForList(LOOKUP_SQL, UserService.normalizeEmail(email));
+                        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        double[] millis = new double[2];
+        for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+            if (value.percentile() == 0.5) {
+                millis[0] = value.value(TimeUnit.MILLISECONDS);
+            } else if (value.percentile() == 0.99) {
+                millis[1] = value.value(TimeUnit.MILLISECONDS);
+            }
+        }
+        return millis;
+    }
+}
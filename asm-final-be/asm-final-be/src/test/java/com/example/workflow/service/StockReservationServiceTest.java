@@ -0,0 +1,180 @@
+package com.example.workflow.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StockReservationServiceTest {
+
+    private static final long TICK_MS = 1000;
+    private static final long TTL_MS = 15 * TICK_MS;
+
+    // Đồng hồ giả: wheel chỉ đi khi test gọi advance(), không phụ thuộc thời gian thật
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    private StockReservationService service;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        service = new StockReservationService();
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "ttlMillis", TTL_MS);
+        ReflectionTestUtils.setField(service, "tickMillis", TICK_MS);
+        ReflectionTestUtils.setField(service, "wheelSize", 64);
+        ReflectionTestUtils.setField(service, "clock", (LongSupplier) now::get);
+        service.init();
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        service.shutdown();
+    }
+
+    // Nhiều user cùng giữ chỗ một sản phẩm: tổng giữ chỗ không bao giờ vượt tồn kho
+    @Test
+    void concurrentHoldsNeverExceedStock() throws Exception {
+        UUID productId = UUID.randomUUID();
+        int stock = 10;
+        int users = 40;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger succeeded = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    service.hold(UUID.randomUUID(), productId, 3, stock);
+                    succeeded.incrementAndGet();
+                } catch (RuntimeException e) {
+                    // Hết hàng là kết quả mong đợi khi tranh nhau
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(3, succeeded.get());
+        assertEquals(stock - 3 * 3, service.available(productId, stock));
+    }
+
+    // Một sản phẩm trong lô không đủ hàng: giữ chỗ của cả lô trở về như trước
+    @Test
+    void holdAllRestoresPreviousHoldsWhenOneProductIsShort() {
+        UUID userId = UUID.randomUUID();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        service.hold(userId, first, 2, 10);
+
+        Map<UUID, Integer> quantities = new LinkedHashMap<>();
+        quantities.put(first, 4);
+        quantities.put(second, 5);
+        Map<UUID, Integer> stocks = Map.of(first, 10, second, 3);
+
+        assertThrows(RuntimeException.class, () -> service.holdAll(userId, quantities, stocks));
+
+        assertEquals(8, service.available(first, 10));
+        assertEquals(3, service.available(second, 3));
+        // Giữ chỗ cũ vẫn còn nguyên: bỏ nó thì bộ đếm về 0
+        service.hold(userId, first, 0, 10);
+        assertEquals(10, service.available(first, 10));
+    }
+
+    // Đổi số lượng tạo Hold mới: mục cũ trong wheel hết hạn không được trả giữ chỗ mới
+    @Test
+    void supersededHoldDoesNotExpireTheNewOne() {
+        UUID userId = UUID.randomUUID();
+        UUID productId = UUID.randomUUID();
+        service.hold(userId, productId, 2, 10);
+        advanceBy(TTL_MS * 2 / 3);
+        service.hold(userId, productId, 3, 10);
+
+        // Qua hạn của giữ chỗ đầu, chưa tới hạn của giữ chỗ sau
+        advanceBy(TTL_MS * 2 / 3);
+        assertEquals(7, service.available(productId, 10));
+
+        advanceBy(TTL_MS);
+        assertEquals(10, service.available(productId, 10));
+    }
+
+    // Gỡ giữ chỗ sau thanh toán trong khi giỏ đang được sửa: bộ đếm luôn khớp với giữ chỗ còn lại
+    @Test
+    void releaseCheckedOutWhileCartIsEdited() throws Exception {
+        UUID productId = UUID.randomUUID();
+        int stock = 100;
+        for (int round = 0; round < 200; round++) {
+            UUID userId = UUID.randomUUID();
+            service.hold(userId, productId, 2, stock);
+
+            CountDownLatch start = new CountDownLatch(1);
+            Future<?> release = executor.submit(() -> {
+                start.await();
+                service.releaseCheckedOut(userId, Map.of(productId, 2));
+                return null;
+            });
+            Future<?> edit = executor.submit(() -> {
+                start.await();
+                service.hold(userId, productId, 5, stock);
+                return null;
+            });
+            start.countDown();
+            release.get(5, TimeUnit.SECONDS);
+            edit.get(5, TimeUnit.SECONDS);
+
+            // Gỡ trước thì còn 5, sửa trước thì phần thêm sau thanh toán (3) tiếp tục được giữ
+            int held = stock - service.available(productId, stock);
+            assertTrue(held == 3 || held == 5, "Giữ chỗ còn lại không hợp lệ: " + held);
+
+            service.hold(userId, productId, 0, stock);
+            assertEquals(stock, service.available(productId, stock));
+        }
+    }
+
+    // Phần giữ chỗ còn lại sau thanh toán vẫn hết hạn như bình thường
+    @Test
+    void remainingHoldAfterCheckoutStillExpires() {
+        UUID userId = UUID.randomUUID();
+        UUID productId = UUID.randomUUID();
+        service.hold(userId, productId, 5, 10);
+        service.releaseCheckedOut(userId, Map.of(productId, 2));
+        assertEquals(7, service.available(productId, 10));
+
+        // Phần còn lại giữ hạn cũ: chưa tới hạn thì vẫn giữ, qua hạn thì được trả
+        advanceBy(TTL_MS - 2 * TICK_MS);
+        assertEquals(7, service.available(productId, 10));
+        advanceBy(2 * TICK_MS);
+        assertEquals(10, service.available(productId, 10));
+    }
+
+    // Đẩy đồng hồ giả đi từng tick, mỗi tick chạy wheel một lần như timer
+    private void advanceBy(long millis) {
+        for (long elapsed = 0; elapsed < millis; elapsed += TICK_MS) {
+            now.addAndGet(Math.min(TICK_MS, millis - elapsed));
+            service.advance();
+        }
+    }
+}
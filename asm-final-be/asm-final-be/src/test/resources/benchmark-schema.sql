@@ -0,0 +1,53 @@
+-- Các bảng tối thiểu cho benchmark, cùng cột với bảng JPA (ddl-auto) sinh ra.
+-- Index và ràng buộc bổ sung do DatabaseIndexInitializer tạo như lúc ứng dụng khởi động.
+CREATE TABLE users (
+    id uuid PRIMARY KEY,
+    name varchar(100) NOT NULL,
+    email varchar(100) NOT NULL UNIQUE,
+    password varchar(255) NOT NULL,
+    phone varchar(20),
+    role varchar(20) NOT NULL
+);
+
+CREATE TABLE categories (
+    id uuid PRIMARY KEY,
+    name varchar(100) NOT NULL,
+    description varchar(500)
+);
+
+CREATE TABLE products (
+    id uuid PRIMARY KEY,
+    name varchar(200) NOT NULL,
+    category_id uuid NOT NULL REFERENCES categories (id),
+    price numeric(10, 2) NOT NULL,
+    stock integer NOT NULL,
+    image_url varchar(500),
+    image_variants varchar(2000),
+    created_at timestamp NOT NULL,
+    version bigint NOT NULL DEFAULT 0
+);
+
+CREATE TABLE carts (
+    id uuid PRIMARY KEY,
+    user_id uuid NOT NULL REFERENCES users (id),
+    product_id uuid NOT NULL REFERENCES products (id),
+    quantity integer NOT NULL
+);
+
+CREATE TABLE orders (
+    id uuid PRIMARY KEY,
+    user_id uuid NOT NULL REFERENCES users (id),
+    total_amount numeric(10, 2) NOT NULL,
+    status varchar(20) NOT NULL,
+    created_at timestamp,
+    stock_deducted boolean
+);
+
+CREATE TABLE order_items (
+    id uuid PRIMARY KEY,
+    order_id uuid NOT NULL REFERENCES orders (id),
+    product_id uuid NOT NULL REFERENCES products (id),
+    quantity integer NOT NULL,
+    price numeric(10, 2) NOT NULL,
+    subtotal numeric(10, 2) NOT NULL
+);
@@ -6,7 +6,7 @@ import { ArrowRight, ShoppingCart, MapPin, Phone, Mail, Facebook, Instagram, Twi
 import Slider from 'react-slick';
 import 'slick-carousel/slick/slick.css';
 import 'slick-carousel/slick/slick-theme.css';
-import { getProducts, getCategories } from '../services/productService';
+import { getProducts, getCategories, getProductImageProps } from '../services/productService';
 import { addToCart } from '../services/cartService';
 import { useStore } from '../store/useStore';
 import toast from 'react-hot-toast';
@@ -213,7 +213,8 @@ export default function Home() {
                   <div className="bg-white rounded-lg shadow-xl overflow-hidden transform transition-all duration-300">
                     <div className="relative">
                       <img
-                        src={product.imageUrl}
+                        {...getProductImageProps(product)}
+                        sizes="(min-width: 1024px) 25vw, 50vw"
                         alt={product.name}
                         className="w-full h-72 object-cover"
                       />
@@ -383,7 +384,8 @@ export default function Home() {
                       <div className="bg-white rounded-lg shadow-xl overflow-hidden transform transition-all duration-300">
                         <div className="relative">
                           <img
-                            src={product.imageUrl}
+                            {...getProductImageProps(product)}
+                            sizes="(min-width: 1024px) 25vw, 50vw"
                             alt={product.name}
                             className="w-full h-72 object-cover"
                           />
@@ -16,6 +16,7 @@ import {
   updateProduct,
   deleteProduct,
   importProductsFromExcel,
+  getImportJob,
 } from "../services/productService";
 import * as XLSX from "xlsx";
 
@@ -320,20 +321,30 @@ const ProductManagement = () => {
     }
     try {
       setIsProcessing(true);
-      const response = await importProductsFromExcel(fileToImport);
-      const newProducts = response.map((p) => ({
-        ...p,
-        category: categories.find((cat) => cat.id === p.category.id) || {
-          id: p.category.id,
-          name: "N/A",
-        },
-      }));
-      setProducts([...newProducts, ...products]);
+      // Import chạy nền: chờ job kết thúc rồi tải lại danh sách sản phẩm
+      let result = await importProductsFromExcel(fileToImport);
+      while (result.status === "QUEUED" || result.status === "RUNNING") {
+        await new Promise((resolve) => setTimeout(resolve, 1000));
+        result = await getImportJob(result.id);
+      }
+      const productsData = await getProducts();
+      setProducts(productsData);
       setIsEditing(false);
       setExcelData([]);
       setEditedData([]);
       setFileToImport(null);
-      toast.success("Import sản phẩm thành công!");
+      if (result.status === "FAILED") {
+        toast.error(`Import dừng ở dòng ${result.lastCommittedRow}: ${result.errorMessage}`);
+      } else {
+        toast.success(`Đã import ${result.rowsImported}/${result.rowsProcessed} sản phẩm`);
+      }
+      if (result.rowsFailed > 0) {
+        const details = result.errors
+          .slice(0, 5)
+          .map((err) => `Dòng ${err.row}: ${err.message}`)
+          .join("\n");
+        toast.error(`${result.rowsFailed} dòng lỗi:\n${details}`);
+      }
     } catch (error) {
       console.error("Lỗi khi import:", error.message);
       toast.error(error.message);
@@ -3,7 +3,7 @@ import { useNavigate } from 'react-router-dom';
 import { motion, AnimatePresence } from 'framer-motion';
 import { FaStar, FaSearch } from 'react-icons/fa';
 import { ShoppingCart } from 'lucide-react';
-import { getProducts } from '../services/productService';
+import { getProducts, getProductImageProps } from '../services/productService';
 import { addToCart } from '../services/cartService';
 import { useStore } from '../store/useStore';
 import toast from 'react-hot-toast';
@@ -284,6 +284,8 @@ export default function Products() {
                           src={
                             product.imageUrl || 'https://via.placeholder.com/600x600?text=No+Image'
                           }
+                          {...getProductImageProps(product)}
+                          sizes="(min-width: 1024px) 25vw, 50vw"
                           alt={product.name}
                           className="w-full h-64 object-cover"
                           loading="lazy"
@@ -23,13 +23,16 @@ export const register = async (userData) => {
 // Hàm đăng nhập
 export const login = async (credentials) => {
   try {
-    const response = await apiClient.post('/login', credentials);
+    // Gửi kèm giỏ hàng khách (nếu có) để backend gộp vào giỏ của tài khoản
+    const guestCart = localStorage.getItem('guestCart');
+    const response = await apiClient.post('/login', guestCart ? { ...credentials, guestCart } : credentials);
     const token = response.data.token; // Giả định BE trả về token trong response
     const role = response.data.role; // Giả định BE trả về role trong response (nếu có)
     
     if (token) {
       // Lưu token vào cookie với thời hạn 7 ngày
       Cookies.set('authToken', token, { expires: 7 });
+      localStorage.removeItem('guestCart');
     }
     return { token, role }; // Trả về cả token và role (nếu có)
   } catch (error) {
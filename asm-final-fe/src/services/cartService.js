@@ -86,6 +86,57 @@ export const removeFromCart = async (cartId) => {
   }
 };
 
+// Nhiều thay đổi giỏ hàng trong một request (cần token)
+// items: [{ productId, quantity }] để đặt số lượng (0 = xóa) hoặc [{ productId, delta }] để cộng/trừ
+export const applyCartBatch = async (items) => {
+  try {
+    const response = await apiClient.post('/cart/batch', { items });
+    return response.data; // Trả về giỏ hàng sau khi cập nhật
+  } catch (error) {
+    throw new Error(error.response?.data || 'Lỗi khi cập nhật giỏ hàng');
+  }
+};
+
+// Giỏ hàng khách (chưa đăng nhập): backend trả token đã ký, lưu ở localStorage và gửi lại qua header
+const GUEST_CART_KEY = 'guestCart';
+
+export const getGuestCartToken = () => localStorage.getItem(GUEST_CART_KEY);
+
+const saveGuestCart = (guestCart) => {
+  if (guestCart.token) {
+    localStorage.setItem(GUEST_CART_KEY, guestCart.token);
+  } else {
+    localStorage.removeItem(GUEST_CART_KEY);
+  }
+  return guestCart;
+};
+
+// Lấy giỏ hàng khách kèm giá hiện tại
+export const getGuestCart = async () => {
+  try {
+    const token = getGuestCartToken();
+    const response = await apiClient.get('/guest-cart', {
+      headers: token ? { 'X-Guest-Cart': token } : {},
+    });
+    return saveGuestCart(response.data);
+  } catch (error) {
+    throw new Error(error.response?.data || 'Lỗi khi lấy giỏ hàng');
+  }
+};
+
+// Sửa giỏ hàng khách, cùng định dạng items với applyCartBatch
+export const applyGuestCartBatch = async (items) => {
+  try {
+    const token = getGuestCartToken();
+    const response = await apiClient.post('/guest-cart/batch', { items }, {
+      headers: token ? { 'X-Guest-Cart': token } : {},
+    });
+    return saveGuestCart(response.data);
+  } catch (error) {
+    throw new Error(error.response?.data || 'Lỗi khi cập nhật giỏ hàng');
+  }
+};
+
 // Thanh toán giỏ hàng (cần token)
 export const checkout = async () => {
   try {
@@ -179,11 +179,44 @@ export const importProductsFromExcel = async (file) => {
     const formData = new FormData();
     formData.append('file', file); // Thêm file vào form-data
 
+    // Server tạo job import chạy nền và trả về ngay
     const response = await apiClient.post('/products/import', formData);
-    console.log('Import sản phẩm thành công:', response.data);
+    console.log('Đã tạo lượt import:', response.data);
     return response.data;
   } catch (error) {
     console.error('Lỗi khi import sản phẩm:', error.message);
     throw new Error(error.message || 'Không thể import sản phẩm!');
   }
-};
\ No newline at end of file
+};
+
+// Hàm lấy tiến độ của lượt import (cần token)
+export const getImportJob = async (jobId) => {
+  try {
+    const token = getToken();
+    if (!token) {
+      throw new Error('Bạn cần đăng nhập để xem tiến độ import!');
+    }
+    const response = await apiClient.get(`/products/import/${jobId}`, {
+      headers: { Authorization: `Bearer ${token}` },
+    });
+    return response.data;
+  } catch (error) {
+    console.error('Lỗi khi lấy tiến độ import:', error.message);
+    throw new Error(error.message || 'Không thể lấy tiến độ import!');
+  }
+};
+// Ảnh cho thẻ sản phẩm: dùng ảnh thu nhỏ (imageVariants) qua srcSet nếu đã có,
+// nếu chưa thì đi qua /products/{id}/image để server sinh biến thể cho lần sau
+export const getProductImageProps = (product, width = 320) => {
+  if (!product?.imageUrl) {
+    return {};
+  }
+  const variants = product.imageVariants;
+  if (!variants) {
+    return { src: `${apiClient.defaults.baseURL}/products/${product.id}/image?w=${width}` };
+  }
+  const srcSet = Object.entries(variants)
+    .map(([key, url]) => `${url} ${key.substring(1)}w`)
+    .join(', ');
+  return { src: variants[`w${width}`] || product.imageUrl, srcSet };
+};